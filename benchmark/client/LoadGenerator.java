@@ -0,0 +1,286 @@
+package client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPreview;
+import service_interface.DrawingRoomDirectory;
+import service_interface.DrawingServer;
+import service_interface.DrawingSnapshot;
+import client.commands.SyntheticStrokes;
+
+/**
+ * Simulates a room full of users against a running drawing server, without
+ * any windows. Each simulated user is a DrawingClient registered over RMI,
+ * exactly as a DrawingApp registers, that draws synthetic Pen and Line
+ * strokes at a steady rate and records when every other user's strokes
+ * reach it.
+ * 
+ * A stroke is identified on receipt by its serialised form, which is unique
+ * to each random stroke, and looked up among the strokes sent to find when it
+ * was sent. Strokes sent during the warm-up are not measured. When the run
+ * ends the generator reports the rate at which strokes were sent and
+ * delivered, the deliveries still missing, and delivery latency percentiles.
+ * 
+ * Usage: LoadGenerator host port clients strokes/s/client seconds [room]
+ * [line ratio] [min points] [max points]
+ * 
+ * @author Andrew
+ * 
+ */
+public class LoadGenerator {
+
+    private static final int WARMUP_SECONDS = 5;
+
+    // How long to wait after the last stroke for deliveries to arrive.
+    private static final int DRAIN_SECONDS = 10;
+
+    // Threads that send strokes; more clients share them.
+    private static final int SENDER_THREADS = 16;
+
+    // Send times of measured strokes, indexed by serialised form.
+    private ConcurrentMap<String, Long> fSent = new ConcurrentHashMap<String, Long>();
+    private AtomicLong fStrokesSent = new AtomicLong();
+    private AtomicLong fDeliveries = new AtomicLong();
+    private volatile boolean fMeasuring;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.err.println("Usage: LoadGenerator host port clients "
+                    + "strokes/s/client seconds [room] [line ratio] "
+                    + "[min points] [max points]");
+            System.exit(1);
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int clients = Integer.parseInt(args[2]);
+        double rate = Double.parseDouble(args[3]);
+        int seconds = Integer.parseInt(args[4]);
+        String room = args.length >= 6 && args[5].trim().length() > 0 ? args[5]
+                .trim()
+                : null;
+        double lineRatio = args.length >= 7 ? Double.parseDouble(args[6]) : 0.2;
+        int minPoints = args.length >= 8 ? Integer.parseInt(args[7]) : 20;
+        int maxPoints = args.length >= 9 ? Integer.parseInt(args[8]) : 200;
+
+        new LoadGenerator().run(host, port, room, clients, rate, seconds,
+                lineRatio, minPoints, maxPoints);
+        System.exit(0);
+    }
+
+    private void run(String host, int port, String room, int clients,
+            double rate, int seconds, final double lineRatio,
+            final int minPoints, final int maxPoints) throws Exception {
+        Registry registry = LocateRegistry.getRegistry(host, port);
+        DrawingServer server;
+        if (room == null) {
+            server = (DrawingServer) registry.lookup("drawingserver");
+        } else {
+            server = ((DrawingRoomDirectory) registry.lookup("drawingrooms"))
+                    .joinRoom(room);
+        }
+
+        System.out.println("Registering " + clients + " clients...");
+        List<LoadClient> loadClients = new ArrayList<LoadClient>();
+        for (int i = 0; i < clients; i++) {
+            LoadClient client = new LoadClient("load" + i, server, i);
+            UnicastRemoteObject.exportObject(client, 0);
+            server.addDrawingClient(client);
+            loadClients.add(client);
+        }
+
+        // Each client draws at the same rate, starting at a random offset so
+        // that strokes are spread evenly over time.
+        ScheduledExecutorService senders = Executors
+                .newScheduledThreadPool(Math.min(clients, SENDER_THREADS));
+        long periodMicros = (long) (1e6 / rate);
+        Random random = new Random(42);
+        for (final LoadClient client : loadClients) {
+            senders.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    client.draw(lineRatio, minPoints, maxPoints);
+                }
+            }, (long) (random.nextDouble() * periodMicros), periodMicros,
+                    TimeUnit.MICROSECONDS);
+        }
+
+        System.out.println("Warming up for " + WARMUP_SECONDS + " s...");
+        Thread.sleep(WARMUP_SECONDS * 1000L);
+        fMeasuring = true;
+        long start = System.nanoTime();
+        System.out.println("Measuring for " + seconds + " s...");
+        Thread.sleep(seconds * 1000L);
+        fMeasuring = false;
+        double sendSeconds = (System.nanoTime() - start) / 1e9;
+        senders.shutdown();
+        senders.awaitTermination(DRAIN_SECONDS, TimeUnit.SECONDS);
+
+        // Wait for deliveries of the last strokes.
+        long expected = fStrokesSent.get() * (clients - 1);
+        long deadline = System.currentTimeMillis() + DRAIN_SECONDS * 1000L;
+        while (fDeliveries.get() < expected
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        double deliverySeconds = (System.nanoTime() - start) / 1e9;
+
+        long[] latencies = latencies(loadClients);
+        System.out.printf("clients %d, target %.1f strokes/s, sent %.1f strokes/s%n",
+                clients, clients * rate, fStrokesSent.get() / sendSeconds);
+        System.out.printf("delivered %d of %d, %.0f deliveries/s%n",
+                fDeliveries.get(), expected, fDeliveries.get()
+                        / deliverySeconds);
+        System.out.printf("latency ms: p50 %.1f, p90 %.1f, p99 %.1f, "
+                + "p99.9 %.1f, max %.1f%n", percentile(latencies, 0.5),
+                percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), percentile(latencies, 1));
+
+        for (LoadClient client : loadClients) {
+            try {
+                server.removeDrawingClient(client);
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+            UnicastRemoteObject.unexportObject(client, true);
+        }
+    }
+
+    private static long[] latencies(List<LoadClient> clients) {
+        int count = 0;
+        for (LoadClient client : clients) {
+            count += client.fLatencyCount;
+        }
+        long[] latencies = new long[count];
+        int i = 0;
+        for (LoadClient client : clients) {
+            synchronized (client) {
+                System.arraycopy(client.fLatencies, 0, latencies, i,
+                        client.fLatencyCount);
+                i += client.fLatencyCount;
+            }
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    /**
+     * Returns a percentile of sorted latencies, in milliseconds.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))] / 1e6;
+    }
+
+    /**
+     * Returns the key by which a stroke is recognised on receipt: its
+     * serialised form.
+     */
+    private static String key(DrawingCommand cmd) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(cmd);
+            out.close();
+            return new String(bytes.toByteArray(), "ISO-8859-1");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A simulated user. It draws when told to by the sender threads, and
+     * records the latency of every measured stroke it receives.
+     */
+    private class LoadClient implements DrawingClient {
+        String fName;
+        DrawingServer fServer;
+        SyntheticStrokes fStrokes;
+        long[] fLatencies = new long[1024];
+        int fLatencyCount;
+
+        LoadClient(String name, DrawingServer server, long seed) {
+            fName = name;
+            fServer = server;
+            fStrokes = new SyntheticStrokes(seed, 1024, 1024);
+        }
+
+        /**
+         * Draws one stroke and broadcasts it.
+         */
+        void draw(double lineRatio, int minPoints, int maxPoints) {
+            DrawingCommand cmd = fStrokes.next(lineRatio, minPoints, maxPoints);
+            boolean measured = fMeasuring;
+            if (measured) {
+                fSent.put(key(cmd), System.nanoTime());
+            }
+            try {
+                fServer.broadcastDrawingCommand(fName, cmd);
+                if (measured) {
+                    fStrokesSent.incrementAndGet();
+                }
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+        }
+
+        public String getName() {
+            return fName;
+        }
+
+        public void receiveDrawingCommandFromServer(DrawingCommand cmd) {
+            received(cmd, System.nanoTime());
+        }
+
+        public void receiveSequencedCommandsFromServer(long sequence,
+                List<DrawingCommand> cmds) {
+            receiveDrawingCommandsFromServer(cmds);
+        }
+
+        public void receiveDrawingCommandsFromServer(List<DrawingCommand> cmds) {
+            long now = System.nanoTime();
+            for (DrawingCommand cmd : cmds) {
+                received(cmd, now);
+            }
+        }
+
+        public void receiveSnapshotFromServer(DrawingSnapshot snapshot) {
+        }
+
+        public void receivePreviewsFromServer(List<DrawingPreview> previews) {
+        }
+
+        private void received(DrawingCommand cmd, long now) {
+            Long sent = fSent.get(key(cmd));
+            if (sent == null) {
+                return;
+            }
+            synchronized (this) {
+                if (fLatencyCount == fLatencies.length) {
+                    fLatencies = Arrays.copyOf(fLatencies, fLatencyCount * 2);
+                }
+                fLatencies[fLatencyCount++] = now - sent;
+            }
+            fDeliveries.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package client;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import harness.Microbenchmark;
+import client.commands.Pen;
+import client.commands.SyntheticStrokes;
+
+/**
+ * Microbenchmarks of repainting a DrawingSpace that holds a number of
+ * committed commands, into an offscreen image the size of the canvas. This
+ * is the work the event dispatch thread does on every repaint. Also times
+ * repainting after the canvas is widened by a strip, the window's width
+ * alternating between two sizes, and repainting a full HD canvas for each
+ * mouse drag of a stroke in progress, either all of it or only the area the
+ * drag changed. Finally times drawing every tile of a large board from
+ * scratch, as when a client joins a busy drawing, and drawing the whole of a
+ * board zoomed out to a single tile, with strokes of more and more points.
+ * 
+ * @author Andrew
+ * 
+ */
+public class PaintMicrobenchmarks {
+
+    private static final int[] COMMAND_COUNTS = { 100, 1000, 10000 };
+    private static final int SIZE = 1024;
+    private static final int STRIP = 64;
+    private static final int SCREEN_WIDTH = 1920;
+    private static final int SCREEN_HEIGHT = 1080;
+    private static final int DRAG_POINTS = 1000;
+    private static final int BOARD_SIZE = 4096;
+    private static final int BOARD_COMMANDS = 20000;
+    private static final int ZOOMED_COMMANDS = 1000;
+    private static final int[] ZOOMED_POINT_COUNTS = { 100, 1000, 10000 };
+    private static final double ZOOMED_SCALE = (double) TiledRenderer.TILE_SIZE
+            / BOARD_SIZE;
+
+    /**
+     * Returns the paint benchmarks, for each number of committed commands.
+     */
+    public static List<Microbenchmark> all() {
+        List<Microbenchmark> benchmarks = new ArrayList<Microbenchmark>();
+        for (final int count : COMMAND_COUNTS) {
+            benchmarks.add(new Microbenchmark("DrawingSpace.paintComponent") {
+                DrawingSpace fSpace;
+                BufferedImage fImage;
+                Graphics2D fGraphics;
+
+                public void setUp() {
+                    fSpace = new DrawingSpace();
+                    fSpace.setSize(SIZE, SIZE);
+                    SyntheticStrokes generator = new SyntheticStrokes(42,
+                            SIZE, SIZE);
+                    for (int i = 0; i < count; i++) {
+                        fSpace.commitDrawingCommand(generator.next(0.2, 20,
+                                100));
+                    }
+                    fImage = new BufferedImage(SIZE, SIZE,
+                            BufferedImage.TYPE_INT_RGB);
+                    fGraphics = fImage.createGraphics();
+                }
+
+                public Object run() {
+                    fSpace.paintComponent(fGraphics);
+                    return fImage;
+                }
+
+                public void tearDown() {
+                    fGraphics.dispose();
+                }
+            }.param("commands", count));
+
+            benchmarks.add(new Microbenchmark("DrawingSpace.resize") {
+                DrawingSpace fSpace;
+                BufferedImage fImage;
+                Graphics2D fGraphics;
+                boolean fWide;
+
+                public void setUp() {
+                    fSpace = new DrawingSpace();
+                    fSpace.setSize(SIZE, SIZE);
+                    SyntheticStrokes generator = new SyntheticStrokes(42,
+                            SIZE + STRIP, SIZE);
+                    for (int i = 0; i < count; i++) {
+                        fSpace.commitDrawingCommand(generator.next(0.2, 20,
+                                100));
+                    }
+                    fImage = new BufferedImage(SIZE + STRIP, SIZE,
+                            BufferedImage.TYPE_INT_RGB);
+                    fGraphics = fImage.createGraphics();
+                }
+
+                public Object run() {
+                    fWide = !fWide;
+                    fSpace.setSize(fWide ? SIZE + STRIP : SIZE, SIZE);
+                    fSpace.paintComponent(fGraphics);
+                    return fImage;
+                }
+
+                public void tearDown() {
+                    fGraphics.dispose();
+                }
+            }.param("commands", count));
+        }
+        benchmarks.add(drag(false).param("region", "full"));
+        benchmarks.add(drag(true).param("region", "changed"));
+        benchmarks.add(board().param("size", BOARD_SIZE).param("commands",
+                BOARD_COMMANDS).param("threads",
+                Runtime.getRuntime().availableProcessors()));
+        for (int points : ZOOMED_POINT_COUNTS) {
+            benchmarks.add(zoomedOut(points).param("commands",
+                    ZOOMED_COMMANDS).param("points", points).param("scale",
+                    ZOOMED_SCALE));
+        }
+        return benchmarks;
+    }
+
+    private static Microbenchmark board() {
+        return new Microbenchmark("TiledRenderer.paint") {
+            CommandStore fCommands;
+            TiledRenderer fRenderer;
+            BufferedImage fImage;
+            Graphics2D fGraphics;
+
+            public void setUp() {
+                fCommands = new CommandStore();
+                CommandGrid grid = new CommandGrid();
+                SyntheticStrokes generator = new SyntheticStrokes(42,
+                        BOARD_SIZE, BOARD_SIZE);
+                for (int i = 0; i < BOARD_COMMANDS; i++) {
+                    fCommands.append(generator.next(0.2, 20, 100));
+                    grid.add(fCommands.get(i));
+                }
+                fRenderer = new TiledRenderer(fCommands, grid);
+                fImage = new BufferedImage(BOARD_SIZE, BOARD_SIZE,
+                        BufferedImage.TYPE_INT_RGB);
+                fGraphics = fImage.createGraphics();
+            }
+
+            public Object run() {
+                fRenderer.reset(null, Color.WHITE, Color.BLACK, 1);
+                fRenderer.paint(fGraphics, new Rectangle(BOARD_SIZE,
+                        BOARD_SIZE), fCommands.size());
+                return fImage;
+            }
+
+            public void tearDown() {
+                fGraphics.dispose();
+            }
+        };
+    }
+
+    private static Microbenchmark zoomedOut(final int points) {
+        return new Microbenchmark("TiledRenderer.paintZoomedOut") {
+            CommandStore fCommands;
+            TiledRenderer fRenderer;
+            BufferedImage fImage;
+            Graphics2D fGraphics;
+
+            public void setUp() {
+                fCommands = new CommandStore();
+                CommandGrid grid = new CommandGrid();
+                SyntheticStrokes generator = new SyntheticStrokes(42,
+                        BOARD_SIZE, BOARD_SIZE);
+                for (int i = 0; i < ZOOMED_COMMANDS; i++) {
+                    int[][] curve = generator.curve(points);
+                    fCommands.append(generator.pen(curve[0], curve[1]));
+                    grid.add(fCommands.get(i));
+                }
+                fRenderer = new TiledRenderer(fCommands, grid);
+                fImage = new BufferedImage(TiledRenderer.TILE_SIZE,
+                        TiledRenderer.TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+                fGraphics = fImage.createGraphics();
+            }
+
+            public Object run() {
+                fRenderer.reset(null, Color.WHITE, Color.BLACK, ZOOMED_SCALE);
+                fRenderer.paint(fGraphics, new Rectangle(
+                        TiledRenderer.TILE_SIZE, TiledRenderer.TILE_SIZE),
+                        fCommands.size());
+                return fImage;
+            }
+
+            public void tearDown() {
+                fGraphics.dispose();
+            }
+        };
+    }
+
+    private static Microbenchmark drag(final boolean changedOnly) {
+        return new Microbenchmark("DrawingSpace.drag") {
+            DrawingSpace fSpace;
+            SyntheticStrokes fGenerator;
+            Pen fPen;
+            int[][] fWalk;
+            int fNext;
+            BufferedImage fImage;
+            Graphics2D fGraphics;
+
+            public void setUp() {
+                fSpace = new DrawingSpace();
+                fSpace.setSize(SCREEN_WIDTH, SCREEN_HEIGHT);
+                fGenerator = new SyntheticStrokes(42, SCREEN_WIDTH,
+                        SCREEN_HEIGHT);
+                for (int i = 0; i < 1000; i++) {
+                    fSpace.commitDrawingCommand(fGenerator.next(0.2, 20, 100));
+                }
+                fPen = new Pen();
+                fSpace.setDrawingCommand(fPen);
+                fWalk = fGenerator.walk(DRAG_POINTS);
+                fImage = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT,
+                        BufferedImage.TYPE_INT_RGB);
+                fGraphics = fImage.createGraphics();
+            }
+
+            public Object run() {
+                // Start the stroke again once it has been dragged through
+                // every point of the walk.
+                if (fNext % DRAG_POINTS == 0) {
+                    fPen.mousePressed(fGenerator.event(
+                            MouseEvent.MOUSE_PRESSED, fWalk[0][0],
+                            fWalk[1][0]));
+                    fNext++;
+                }
+                int i = fNext++ % DRAG_POINTS;
+                fPen.mouseDragged(fGenerator.event(MouseEvent.MOUSE_DRAGGED,
+                        fWalk[0][i], fWalk[1][i]));
+
+                Rectangle clip = changedOnly ? fPen.changedBounds()
+                        : new Rectangle(SCREEN_WIDTH, SCREEN_HEIGHT);
+                fGraphics.setClip(clip);
+                fSpace.paintComponent(fGraphics);
+                return fImage;
+            }
+
+            public void tearDown() {
+                fGraphics.dispose();
+            }
+        };
+    }
+}
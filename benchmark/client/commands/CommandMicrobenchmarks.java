@@ -0,0 +1,127 @@
+package client.commands;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.awt.event.MouseEvent;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import harness.Microbenchmark;
+
+/**
+ * Microbenchmarks of the per-command work done on every stroke: serialising
+ * and deserialising Pen and Line commands, each in a stream of its own as in
+ * a single remote call, and cloning a Pen, as DrawingSpace does when a
+ * command finishes. Also replays mouse traces of whole freehand strokes
+ * through a Pen, from the press to the clone stored when it is released, to
+ * measure what drawing a stroke costs and allocates.
+ * 
+ * @author Andrew
+ * 
+ */
+public class CommandMicrobenchmarks {
+
+    private static final int[] POINT_COUNTS = { 10, 100, 1000 };
+    private static final int[] TRACE_POINT_COUNTS = { 100, 1000, 10000 };
+
+    // Simplification tolerance set in the drawing application's properties.
+    private static final double TOLERANCE = 1.0;
+
+    /**
+     * Returns the command benchmarks, for each point count.
+     */
+    public static List<Microbenchmark> all() {
+        List<Microbenchmark> benchmarks = new ArrayList<Microbenchmark>();
+        SyntheticStrokes generator = new SyntheticStrokes(42, 1024, 1024);
+        for (int points : POINT_COUNTS) {
+            final Pen pen = generator.pen(points);
+            benchmarks.add(serialize("Pen.serialize", pen).param("points",
+                    points));
+            benchmarks.add(deserialize("Pen.deserialize", pen).param("points",
+                    points));
+            benchmarks.add(new Microbenchmark("Pen.clone") {
+                public Object run() throws Exception {
+                    return pen.clone();
+                }
+            }.param("points", points));
+        }
+        Line line = generator.line();
+        benchmarks.add(serialize("Line.serialize", line).param("points", 2));
+        benchmarks.add(deserialize("Line.deserialize", line).param("points", 2));
+        for (int points : TRACE_POINT_COUNTS) {
+            benchmarks.add(replay(generator, points).param("points", points));
+        }
+        return benchmarks;
+    }
+
+    private static Microbenchmark replay(final SyntheticStrokes generator,
+            final int points) {
+        return new Microbenchmark("Pen.replay") {
+            Pen fPen;
+            MouseEvent[] fEvents;
+
+            public void setUp() {
+                fPen = new Pen();
+                fPen.setSimplificationTolerance(TOLERANCE);
+
+                // The events are made up front, as the toolkit would make
+                // them, so that only the Pen's own allocations are counted.
+                int[][] trace = generator.curve(points);
+                fEvents = new MouseEvent[points];
+                fEvents[0] = generator.event(MouseEvent.MOUSE_PRESSED,
+                        trace[0][0], trace[1][0]);
+                for (int i = 1; i < points - 1; i++) {
+                    fEvents[i] = generator.event(MouseEvent.MOUSE_DRAGGED,
+                            trace[0][i], trace[1][i]);
+                }
+                fEvents[points - 1] = generator.event(
+                        MouseEvent.MOUSE_RELEASED, trace[0][points - 1],
+                        trace[1][points - 1]);
+            }
+
+            public Object run() throws Exception {
+                fPen.mousePressed(fEvents[0]);
+                for (int i = 1; i < points - 1; i++) {
+                    fPen.mouseDragged(fEvents[i]);
+                }
+                fPen.mouseReleased(fEvents[points - 1]);
+                return fPen.clone();
+            }
+        };
+    }
+
+    private static Microbenchmark serialize(String name, final Object cmd) {
+        return new Microbenchmark(name) {
+            public Object run() throws Exception {
+                return write(cmd);
+            }
+        };
+    }
+
+    private static Microbenchmark deserialize(String name, final Object cmd) {
+        return new Microbenchmark(name) {
+            byte[] fBytes;
+
+            public void setUp() throws Exception {
+                fBytes = write(cmd);
+            }
+
+            public Object run() throws Exception {
+                ObjectInputStream in = new ObjectInputStream(
+                        new ByteArrayInputStream(fBytes));
+                return in.readObject();
+            }
+        };
+    }
+
+    private static byte[] write(Object cmd) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(cmd);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,63 @@
+package client.commands;
+
+/**
+ * Measures how much simplification on completion reduces the number of
+ * points in freehand strokes for a range of tolerances, and the time taken to
+ * execute a stroke including its simplification.
+ * Strokes are smooth curves sampled about a pixel apart, as slow strokes
+ * drawn with a mouse are.
+ * 
+ * Usage: SimplificationBenchmark [strokes per tolerance]
+ * 
+ * @author Andrew
+ * 
+ */
+public class SimplificationBenchmark {
+
+    private static final double[] TOLERANCES = { 0, 0.5, 1, 2, 4 };
+    private static final int[] POINT_COUNTS = { 100, 1000, 5000 };
+
+    public static void main(String[] args) {
+        int strokes = 500;
+        if (args.length == 1) {
+            strokes = Integer.parseInt(args[0]);
+        }
+
+        System.out.printf("%7s %10s %12s %12s %10s %14s%n", "points",
+                "tolerance", "drawn", "kept", "kept %", "us/stroke");
+        for (int points : POINT_COUNTS) {
+            for (double tolerance : TOLERANCES) {
+                // Warm up, then measure.
+                run(points, tolerance, strokes / 10, false);
+                run(points, tolerance, strokes, true);
+            }
+        }
+    }
+
+    private static void run(int points, double tolerance, int strokes,
+            boolean report) {
+        SyntheticStrokes generator = new SyntheticStrokes(42, 4096, 4096);
+        int[][][] curves = new int[strokes][][];
+        for (int i = 0; i < strokes; i++) {
+            curves[i] = generator.curve(points);
+        }
+
+        long drawnBefore = Pen.pointsDrawn();
+        long keptBefore = Pen.pointsKept();
+        long start = System.nanoTime();
+        for (int[][] curve : curves) {
+            Pen pen = new Pen();
+            pen.setSimplificationTolerance(tolerance);
+            generator.drive(pen, curve[0], curve[1]);
+        }
+        double micros = (System.nanoTime() - start) / 1e3 / strokes;
+
+        long drawn = Pen.pointsDrawn() - drawnBefore;
+        long kept = Pen.pointsKept() - keptBefore;
+        if (!report) {
+            return;
+        }
+        System.out.printf("%7d %10.1f %12d %12d %10.1f %14.1f%n", points,
+                tolerance, drawn, kept, 100.0 * kept / drawn, micros);
+    }
+}
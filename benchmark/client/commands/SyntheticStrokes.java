@@ -0,0 +1,171 @@
+package client.commands;
+
+import java.awt.Component;
+import java.awt.event.MouseEvent;
+import java.util.Random;
+
+import javax.swing.JPanel;
+
+import service_interface.DrawingCommand;
+
+/**
+ * Generates drawing commands without a user, by feeding Pen and Line commands
+ * the mouse events a user would. Freehand strokes are random walks, which is
+ * a fair stand-in for the shape and point density of real strokes.
+ * 
+ * @author Andrew
+ * 
+ */
+public class SyntheticStrokes {
+
+    // Mouse events need a source component; it is never displayed.
+    private Component fSource;
+    private Random fRandom;
+    private int fWidth;
+    private int fHeight;
+
+    /**
+     * Creates a generator of strokes that lie within a canvas of the
+     * specified size.
+     * 
+     * @param seed
+     *            Seed for the random number generator, so that runs can be
+     *            repeated.
+     */
+    public SyntheticStrokes(long seed, int width, int height) {
+        fSource = new JPanel();
+        fRandom = new Random(seed);
+        fWidth = width;
+        fHeight = height;
+    }
+
+    /**
+     * Returns a finished drawing command: a Pen with a number of points
+     * between minPoints and maxPoints, or, with probability lineRatio, a
+     * Line.
+     */
+    public DrawingCommand next(double lineRatio, int minPoints, int maxPoints) {
+        if (fRandom.nextDouble() < lineRatio) {
+            return line();
+        }
+        return pen(minPoints + fRandom.nextInt(maxPoints - minPoints + 1));
+    }
+
+    /**
+     * Returns a finished Pen command with the specified number of points.
+     */
+    public Pen pen(int points) {
+        int[][] walk = walk(points);
+        return pen(walk[0], walk[1]);
+    }
+
+    /**
+     * Returns a finished Pen command through the specified points.
+     */
+    public Pen pen(int[] xPoints, int[] yPoints) {
+        Pen pen = new Pen();
+        drive(pen, xPoints, yPoints);
+        return (Pen) copy(pen);
+    }
+
+    /**
+     * Executes a Pen, or any other command, with the mouse events of a drag
+     * through the specified points.
+     */
+    public void drive(DrawingCommand cmd, int[] xPoints, int[] yPoints) {
+        int last = xPoints.length - 1;
+
+        cmd.mousePressed(event(MouseEvent.MOUSE_PRESSED, xPoints[0],
+                yPoints[0]));
+        for (int i = 1; i < last; i++) {
+            cmd.mouseDragged(event(MouseEvent.MOUSE_DRAGGED, xPoints[i],
+                    yPoints[i]));
+        }
+        cmd.mouseReleased(event(MouseEvent.MOUSE_RELEASED, xPoints[last],
+                yPoints[last]));
+    }
+
+    /**
+     * Returns the x and y coordinates of a random walk with the specified
+     * number of points, at least two.
+     */
+    public int[][] walk(int points) {
+        int[] xPoints = new int[Math.max(2, points)];
+        int[] yPoints = new int[xPoints.length];
+        xPoints[0] = fRandom.nextInt(fWidth);
+        yPoints[0] = fRandom.nextInt(fHeight);
+
+        for (int i = 1; i < xPoints.length; i++) {
+            xPoints[i] = clamp(xPoints[i - 1] + fRandom.nextInt(7) - 3, fWidth);
+            yPoints[i] = clamp(yPoints[i - 1] + fRandom.nextInt(7) - 3,
+                    fHeight);
+        }
+        return new int[][] { xPoints, yPoints };
+    }
+
+    /**
+     * Returns the x and y coordinates of a smooth curve with the specified
+     * number of points, at least two, as a slow hand movement sampled at every
+     * mouse event would produce. Consecutive points are about a pixel apart.
+     */
+    public int[][] curve(int points) {
+        int[] xPoints = new int[Math.max(2, points)];
+        int[] yPoints = new int[xPoints.length];
+        double x = fRandom.nextInt(fWidth);
+        double y = fRandom.nextInt(fHeight);
+        double heading = fRandom.nextDouble() * 2 * Math.PI;
+        double turn = 0;
+
+        for (int i = 0; i < xPoints.length; i++) {
+            xPoints[i] = clamp((int) Math.round(x), fWidth);
+            yPoints[i] = clamp((int) Math.round(y), fHeight);
+
+            // Let the rate of turn drift, so the curve bends one way and
+            // then the other.
+            turn = Math.max(-0.05, Math.min(0.05, turn
+                    + (fRandom.nextDouble() - 0.5) * 0.01));
+            heading += turn;
+            x += Math.cos(heading);
+            y += Math.sin(heading);
+        }
+        return new int[][] { xPoints, yPoints };
+    }
+
+    /**
+     * Returns a finished Line command.
+     */
+    public Line line() {
+        Line line = new Line();
+        line.mousePressed(event(MouseEvent.MOUSE_PRESSED,
+                fRandom.nextInt(fWidth), fRandom.nextInt(fHeight)));
+        line.mouseDragged(event(MouseEvent.MOUSE_DRAGGED,
+                fRandom.nextInt(fWidth), fRandom.nextInt(fHeight)));
+        line.mouseReleased(event(MouseEvent.MOUSE_RELEASED,
+                fRandom.nextInt(fWidth), fRandom.nextInt(fHeight)));
+        return (Line) copy(line);
+    }
+
+    /**
+     * Returns the copy of a finished command that DrawingSpace would commit
+     * and broadcast.
+     */
+    private DrawingCommand copy(DrawingCommand cmd) {
+        try {
+            return (DrawingCommand) cmd.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns a mouse event of the specified type at a point.
+     */
+    public MouseEvent event(int id, int x, int y) {
+        return new MouseEvent(fSource, id, System.currentTimeMillis(), 0, x,
+                y, 1, false, MouseEvent.BUTTON1);
+    }
+
+    private static int clamp(int value, int limit) {
+        return Math.max(0, Math.min(limit - 1, value));
+    }
+}
@@ -0,0 +1,173 @@
+package client.commands;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the serialised size, and serialisation throughput, of Pen and Line
+ * commands in their compact format against the default Java serialisation
+ * they used before.
+ * 
+ * The previous format is reproduced by LegacyPen and LegacyLine, which hold
+ * the same fields as the old classes did and rely on default serialisation.
+ * They leave out the AbstractDrawingCommand class descriptor that the old
+ * classes also wrote, so the legacy sizes are if anything understated.
+ * Commands are written as a single stream of many commands, as in a batch or
+ * snapshot, and as one stream per command, as in a single remote call.
+ * 
+ * Usage: WireFormatBenchmark [commands per run]
+ * 
+ * @author Andrew
+ * 
+ */
+public class WireFormatBenchmark {
+
+    private static final int[] POINT_COUNTS = { 2, 20, 100, 1000 };
+
+    public static void main(String[] args) throws Exception {
+        int count = 2000;
+        if (args.length == 1) {
+            count = Integer.parseInt(args[0]);
+        }
+
+        System.out.printf("%-6s %7s %12s %12s %12s %12s %12s%n", "format",
+                "points", "bytes/call", "bytes/batch", "ratio", "write/s",
+                "read/s");
+        for (int points : POINT_COUNTS) {
+            SyntheticStrokes generator = new SyntheticStrokes(42, 1024, 1024);
+            List<Object> compact = new ArrayList<Object>();
+            List<Object> legacy = new ArrayList<Object>();
+
+            for (int i = 0; i < count; i++) {
+                if (points == 2) {
+                    Line line = generator.line();
+                    compact.add(line);
+                    legacy.add(new LegacyLine());
+                } else {
+                    int[][] walk = generator.walk(points);
+                    compact.add(generator.pen(walk[0], walk[1]));
+                    legacy.add(new LegacyPen(walk[0], walk[1]));
+                }
+            }
+
+            double legacyBytes = bytesPerCommand(legacy);
+            report("legacy", points, legacy, legacyBytes);
+            report("new", points, compact, legacyBytes);
+        }
+    }
+
+    private static void report(String format, int points, List<Object> cmds,
+            double legacyBytes) throws Exception {
+        double batchBytes = bytesPerCommand(cmds);
+
+        // Warm up, then time.
+        for (int i = 0; i < 5; i++) {
+            readAll(writeAll(cmds));
+        }
+        long start = System.nanoTime();
+        byte[] bytes = null;
+        int rounds = 20;
+        for (int i = 0; i < rounds; i++) {
+            bytes = writeAll(cmds);
+        }
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            readAll(bytes);
+        }
+        double readSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-6s %7d %12.1f %12.1f %12.2f %12.0f %12.0f%n",
+                format, points, bytesPerCall(cmds), batchBytes, batchBytes
+                        / legacyBytes, rounds * cmds.size() / writeSeconds,
+                rounds * cmds.size() / readSeconds);
+    }
+
+    /**
+     * Returns the mean size of a command written to a stream of its own.
+     */
+    private static double bytesPerCall(List<Object> cmds) throws IOException {
+        long total = 0;
+        for (Object cmd : cmds) {
+            List<Object> one = new ArrayList<Object>();
+            one.add(cmd);
+            total += writeAll(one).length;
+        }
+        return (double) total / cmds.size();
+    }
+
+    /**
+     * Returns the mean size of a command written to a stream shared with the
+     * other commands.
+     */
+    private static double bytesPerCommand(List<Object> cmds)
+            throws IOException {
+        return (double) writeAll(cmds).length / cmds.size();
+    }
+
+    private static byte[] writeAll(List<Object> cmds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        for (Object cmd : cmds) {
+            out.writeObject(cmd);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static void readAll(byte[] bytes) throws Exception {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                bytes));
+        try {
+            while (true) {
+                in.readObject();
+            }
+        } catch (EOFException e) {
+            // End of stream.
+        }
+        in.close();
+    }
+
+    /**
+     * The fields Pen serialised before it had a compact format.
+     */
+    static class LegacyPen implements Serializable {
+        private int[] fXPoints;
+        private int[] fYPoints;
+        int fIndex;
+        private boolean fIsExecuting;
+
+        LegacyPen(int[] xPoints, int[] yPoints) {
+            fXPoints = xPoints;
+            fYPoints = yPoints;
+            fIndex = xPoints.length;
+            fIsExecuting = true;
+        }
+    }
+
+    /**
+     * The fields Line serialised before it had a compact format.
+     */
+    static class LegacyLine implements Serializable {
+        private boolean fIsExecuting;
+        private int fStartX;
+        private int fStartY;
+        private int fEndX;
+        private int fEndY;
+        private int fFormerEndX;
+        private int fFormerEndY;
+
+        // Every field is a fixed size primitive, so the values do not affect
+        // the serialised size.
+        LegacyLine() {
+            fIsExecuting = true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package harness;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One operation to be timed by the Microbenchmarks runner, together with the
+ * parameters it was set up with. Subclasses do any expensive preparation in
+ * setUp(), which is not timed, and the operation itself in run(), which is
+ * called repeatedly. run() returns a value derived from its work so that the
+ * runner can consume it and the JIT cannot discard the work as dead code.
+ * 
+ * @author Andrew
+ * 
+ */
+public abstract class Microbenchmark {
+
+    private String fName;
+    private Map<String, String> fParams = new LinkedHashMap<String, String>();
+
+    /**
+     * Creates a benchmark.
+     * 
+     * @param name
+     *            The benchmark's name, conventionally Class.operation.
+     */
+    protected Microbenchmark(String name) {
+        fName = name;
+    }
+
+    /**
+     * Records a parameter of the benchmark, for reporting.
+     * 
+     * @return this benchmark.
+     */
+    public Microbenchmark param(String name, Object value) {
+        fParams.put(name, String.valueOf(value));
+        return this;
+    }
+
+    public String name() {
+        return fName;
+    }
+
+    public Map<String, String> params() {
+        return fParams;
+    }
+
+    /**
+     * Prepares the benchmark's state. Called once, before any timing.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Performs the timed operation once.
+     */
+    public abstract Object run() throws Exception;
+
+    /**
+     * Releases the benchmark's state. Called once, after timing.
+     */
+    public void tearDown() throws Exception {
+    }
+}
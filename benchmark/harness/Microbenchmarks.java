@@ -0,0 +1,268 @@
+package harness;
+
+import java.io.FileWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import server.FanOutMicrobenchmarks;
+import client.PaintMicrobenchmarks;
+import client.commands.CommandMicrobenchmarks;
+
+/**
+ * Runs the microbenchmarks of the drawing application's hot paths and writes
+ * their results as JSON, in the layout used by JMH's JSON output, so that
+ * runs before and after a change can be compared with the usual JMH tools.
+ * 
+ * Each benchmark is run for a number of warm-up iterations, whose results are
+ * discarded, then for a number of measurement iterations. An iteration calls
+ * the benchmark's operation for a fixed time and yields the mean time per
+ * call. The score is the mean over the measurement iterations, and its error
+ * the half-width of a 99.9% confidence interval, as in JMH's average time
+ * mode.
+ * 
+ * The bytes allocated per call by the thread running the benchmark are
+ * measured too, where the JVM can report them, and written as JMH's GC
+ * profiler writes them, as the secondary metric gc.alloc.rate.norm.
+ * 
+ * Usage: Microbenchmarks [results file] [benchmark name regex]
+ * 
+ * @author Andrew
+ * 
+ */
+public class Microbenchmarks {
+
+    private static final PrintStream OUT = System.out;
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_MILLIS = 500;
+    private static final long MIN_BATCH_NANOS = 100000;
+
+    // Student's t for a 99.9% two-sided interval, by degrees of freedom.
+    private static final double[] T_999 = { Double.NaN, 636.62, 31.599,
+            12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587 };
+
+    // Results of operations are folded into this, so they are not dead code.
+    static volatile int fSink;
+
+    // Source of the bytes allocated by a thread, or null if the JVM cannot
+    // report them.
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    public static void main(String[] args) throws Exception {
+        String resultsFile = args.length >= 1 ? args[0]
+                : "microbenchmarks.json";
+        Pattern filter = Pattern.compile(args.length >= 2 ? args[1] : ".*");
+
+        List<Microbenchmark> benchmarks = new ArrayList<Microbenchmark>();
+        benchmarks.addAll(CommandMicrobenchmarks.all());
+        benchmarks.addAll(PaintMicrobenchmarks.all());
+        benchmarks.addAll(FanOutMicrobenchmarks.all());
+
+        // Keep the server's logging out of the measurements.
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+
+        OUT.printf("%-36s %-24s %14s %12s %12s%n", "benchmark", "params",
+                "ns/op", "error", "B/op");
+        StringBuilder json = new StringBuilder("[\n");
+        for (Microbenchmark benchmark : benchmarks) {
+            if (!filter.matcher(benchmark.name()).find()) {
+                continue;
+            }
+            double[] allocations = new double[MEASUREMENT_ITERATIONS];
+            double[] iterations = measure(benchmark, allocations);
+            double score = mean(iterations);
+            double error = error(iterations);
+
+            OUT.printf("%-36s %-24s %14.1f %12.1f %12.0f%n", benchmark.name(),
+                    benchmark.params(), score, error, mean(allocations));
+            if (json.length() > 2) {
+                json.append(",\n");
+            }
+            appendJson(json, benchmark, score, error, iterations, allocations);
+        }
+        json.append("\n]\n");
+
+        Writer out = new FileWriter(resultsFile);
+        try {
+            out.write(json.toString());
+        } finally {
+            out.close();
+        }
+        OUT.println("Results written to " + resultsFile);
+        System.exit(0);
+    }
+
+    /**
+     * Runs a benchmark's iterations, returning the mean nanoseconds per
+     * operation of each measurement iteration, and filling in the mean bytes
+     * allocated per operation of each, or NaN if these are not known.
+     */
+    private static double[] measure(Microbenchmark benchmark,
+            double[] allocations) throws Exception {
+        benchmark.setUp();
+        try {
+            for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+                iterate(benchmark, allocations, 0);
+            }
+            double[] iterations = new double[MEASUREMENT_ITERATIONS];
+            for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+                iterations[i] = iterate(benchmark, allocations, i);
+            }
+            return iterations;
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    /**
+     * Calls a benchmark's operation repeatedly for an iteration's time, and
+     * returns the mean nanoseconds per call. The clock is read once per batch
+     * of calls, and batches grow until reading it costs next to nothing
+     * beside the calls. The mean bytes allocated per call are stored in an
+     * element of an array.
+     */
+    private static double iterate(Microbenchmark benchmark,
+            double[] allocations, int index) throws Exception {
+        long allocated = allocatedBytes();
+        long deadline = System.nanoTime() + ITERATION_MILLIS * 1000000;
+        long operations = 0;
+        int batch = 1;
+        int sink = 0;
+        long start = System.nanoTime();
+        long now = start;
+        do {
+            long batchStart = now;
+            for (int i = 0; i < batch; i++) {
+                sink += System.identityHashCode(benchmark.run());
+            }
+            operations += batch;
+            now = System.nanoTime();
+            if (now - batchStart < MIN_BATCH_NANOS) {
+                batch *= 2;
+            }
+        } while (now < deadline);
+        allocations[index] = allocated < 0 ? Double.NaN
+                : (double) (allocatedBytes() - allocated) / operations;
+        fSink += sink;
+        return (double) (now - start) / operations;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if this
+     * is not known.
+     */
+    private static long allocatedBytes() {
+        if (THREADS == null) {
+            return -1;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory
+                .getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) threads;
+            if (counter.isThreadAllocatedMemorySupported()) {
+                counter.setThreadAllocatedMemoryEnabled(true);
+                return counter;
+            }
+        }
+        return null;
+    }
+
+    private static double mean(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        return total / values.length;
+    }
+
+    /**
+     * Returns the half-width of the 99.9% confidence interval of the mean.
+     */
+    private static double error(double[] values) {
+        if (values.length < 2) {
+            return Double.NaN;
+        }
+        double mean = mean(values);
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        double deviation = Math.sqrt(squares / (values.length - 1));
+        int freedom = Math.min(values.length - 1, T_999.length - 1);
+        return T_999[freedom] * deviation / Math.sqrt(values.length);
+    }
+
+    private static void appendJson(StringBuilder json,
+            Microbenchmark benchmark, double score, double error,
+            double[] iterations, double[] allocations) {
+        json.append("  {\n");
+        json.append("    \"benchmark\" : ").append(quote(benchmark.name()))
+                .append(",\n");
+        json.append("    \"mode\" : \"avgt\",\n");
+        json.append("    \"warmupIterations\" : ").append(WARMUP_ITERATIONS)
+                .append(",\n");
+        json.append("    \"measurementIterations\" : ").append(
+                MEASUREMENT_ITERATIONS).append(",\n");
+        json.append("    \"measurementTime\" : \"").append(ITERATION_MILLIS)
+                .append(" ms\",\n");
+        json.append("    \"params\" : {");
+        String separator = "";
+        for (Map.Entry<String, String> param : benchmark.params().entrySet()) {
+            json.append(separator).append("\n      ").append(
+                    quote(param.getKey())).append(" : ").append(
+                    quote(param.getValue()));
+            separator = ",";
+        }
+        json.append(separator.length() > 0 ? "\n    },\n" : "},\n");
+        json.append("    \"primaryMetric\" : {\n");
+        json.append("      \"score\" : ").append(number(score)).append(",\n");
+        json.append("      \"scoreError\" : ").append(number(error)).append(
+                ",\n");
+        json.append("      \"scoreUnit\" : \"ns/op\",\n");
+        json.append("      \"rawData\" : [ [ ");
+        for (int i = 0; i < iterations.length; i++) {
+            json.append(i == 0 ? "" : ", ").append(number(iterations[i]));
+        }
+        json.append(" ] ]\n");
+        json.append("    },\n");
+        json.append("    \"secondaryMetrics\" : {");
+        if (!Double.isNaN(allocations[0])) {
+            json.append("\n      \"\u00b7gc.alloc.rate.norm\" : {\n");
+            json.append("        \"score\" : ").append(
+                    number(mean(allocations))).append(",\n");
+            json.append("        \"scoreError\" : ").append(
+                    number(error(allocations))).append(",\n");
+            json.append("        \"scoreUnit\" : \"B/op\",\n");
+            json.append("        \"rawData\" : [ [ ");
+            for (int i = 0; i < allocations.length; i++) {
+                json.append(i == 0 ? "" : ", ").append(number(allocations[i]));
+            }
+            json.append(" ] ]\n");
+            json.append("      }\n    ");
+        }
+        json.append("}\n");
+        json.append("  }");
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "\"NaN\"" : Double.toString(value);
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,157 @@
+package server;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPreview;
+import service_interface.DrawingSnapshot;
+import client.commands.SyntheticStrokes;
+
+/**
+ * Measures how the cost of joining a session, and the server heap, grow with
+ * the length of the session, with and without raster checkpointing of the
+ * command log.
+ * 
+ * For each session length the benchmark broadcasts that many synthetic
+ * strokes to a fresh server, then registers an in-process client and times
+ * how long it takes to receive and decode its snapshot. Heap usage is
+ * measured after a full collection with the server still reachable.
+ * 
+ * Usage: CheckpointBenchmark [maximum strokes]
+ * 
+ * @author Andrew
+ * 
+ */
+public class CheckpointBenchmark {
+
+    private static final PrintStream OUT = System.out;
+
+    public static void main(String[] args) throws Exception {
+        int maxStrokes = 1000000;
+        if (args.length == 1) {
+            maxStrokes = Integer.parseInt(args[0]);
+        }
+
+        // Keep the server's per-command logging out of the measurements.
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+
+        OUT.printf("%-12s %10s %14s %14s %14s%n", "mode", "strokes",
+                "log commands", "join ms", "heap MB");
+        for (int strokes = 1000; strokes <= maxStrokes; strokes *= 10) {
+            // Without checkpointing the whole log stays on the heap, so stop
+            // short of sizes that would exhaust it.
+            if (strokes <= 100000) {
+                run("log only", strokes, 0);
+            }
+            run("checkpoint", strokes, 10000);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String mode, int strokes, int threshold)
+            throws Exception {
+        Properties props = new Properties();
+        props.setProperty(ServerConfiguration.CHECKPOINT_THRESHOLD,
+                Integer.toString(threshold));
+        props.setProperty(ServerConfiguration.CHECKPOINT_TAIL, "1000");
+        props.setProperty(ServerConfiguration.CHECKPOINT_WIDTH, "1024");
+        props.setProperty(ServerConfiguration.CHECKPOINT_HEIGHT, "1024");
+        DrawingServerImpl server = new DrawingServerImpl(
+                new ServerConfiguration(props));
+
+        SyntheticStrokes generator = new SyntheticStrokes(42, 1024, 1024);
+        for (int i = 0; i < strokes; i++) {
+            server.broadcastDrawingCommand("generator",
+                    generator.next(0.2, 20, 100));
+        }
+        waitForCompaction(server);
+
+        SnapshotClient client = new SnapshotClient();
+        long start = System.nanoTime();
+        server.addDrawingClient(client);
+        client.fReceived.await(5, TimeUnit.MINUTES);
+        long joinNanos = System.nanoTime() - start;
+
+        int logSize;
+        synchronized (server) {
+            logSize = server.fCompletedDrawingCommands.size();
+        }
+        long heap = usedHeap();
+
+        OUT.printf("%-12s %10d %14d %14.1f %14.1f%n", mode, strokes, logSize,
+                joinNanos / 1e6, heap / (1024.0 * 1024.0));
+
+        server.removeDrawingClient(client);
+        UnicastRemoteObject.unexportObject(server, true);
+        server.fThreadPool.shutdownNow();
+    }
+
+    private static void waitForCompaction(DrawingServerImpl server)
+            throws InterruptedException {
+        while (true) {
+            synchronized (server) {
+                if (!server.fCompacting) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Client that decodes the snapshot it is sent, as a real client would,
+     * and ignores everything else.
+     */
+    private static class SnapshotClient implements DrawingClient {
+        CountDownLatch fReceived = new CountDownLatch(1);
+
+        public String getName() {
+            return "benchmark";
+        }
+
+        public void receiveDrawingCommandFromServer(DrawingCommand cmd) {
+        }
+
+        public void receiveSequencedCommandsFromServer(long sequence,
+                List<DrawingCommand> cmds) {
+            receiveDrawingCommandsFromServer(cmds);
+        }
+
+        public void receiveDrawingCommandsFromServer(List<DrawingCommand> cmds) {
+        }
+
+        public void receivePreviewsFromServer(List<DrawingPreview> previews) {
+        }
+
+        public void receiveSnapshotFromServer(DrawingSnapshot snapshot)
+                throws RemoteException {
+            try {
+                snapshot.commands();
+                snapshot.checkpointImage();
+            } catch (Exception e) {
+                throw new RemoteException("Unable to read snapshot", e);
+            }
+            fReceived.countDown();
+        }
+    }
+}
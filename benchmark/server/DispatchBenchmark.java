@@ -0,0 +1,232 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPreview;
+import service_interface.DrawingSnapshot;
+import client.commands.SyntheticStrokes;
+
+/**
+ * Compares the Cached and Virtual dispatch executors with many clients
+ * registered with one server. Each client stands in for a remote peer: every
+ * call to it blocks for a fixed time, as a remote call would, before it
+ * records how long each command took to reach it. The benchmark broadcasts
+ * strokes at a steady rate, after a warm-up that is not measured, and reports the peak number of platform threads,
+ * the heap and resident memory with every client registered, and the median
+ * and 99th percentile delivery latency.
+ * 
+ * Virtual threads need Java 21 or later; on an older runtime the Virtual
+ * executor falls back to Cached. Run each mode in a fresh process.
+ * 
+ * Usage: DispatchBenchmark cached|virtual [clients] [strokes] [call millis]
+ * [stroke interval millis]
+ * 
+ * @author Andrew
+ * 
+ */
+public class DispatchBenchmark {
+
+    private static final PrintStream OUT = System.out;
+
+    // Strokes broadcast before measuring, while threads start and code is
+    // compiled.
+    private static final int WARMUP_STROKES = 20;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length >= 1 ? args[0] : "cached";
+        int clients = args.length >= 2 ? Integer.parseInt(args[1]) : 1000;
+        int strokes = args.length >= 3 ? Integer.parseInt(args[2]) : 200;
+        long callMillis = args.length >= 4 ? Long.parseLong(args[3]) : 2;
+        long intervalMillis = args.length >= 5 ? Long.parseLong(args[4]) : 20;
+
+        // Keep the server's per-command logging out of the measurements.
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+
+        OUT.printf("%-8s %8s %8s %10s %10s %10s %10s %10s%n", "mode",
+                "clients", "strokes", "threads", "heap MB", "rss MB",
+                "p50 ms", "p99 ms");
+        run(mode, clients, strokes, callMillis, intervalMillis);
+        System.exit(0);
+    }
+
+    private static void run(String mode, int clients, int strokes,
+            long callMillis, long intervalMillis) throws Exception {
+        Properties props = new Properties();
+        props.setProperty(ServerConfiguration.CHECKPOINT_THRESHOLD, "0");
+        props.setProperty(ServerConfiguration.DISPATCH_EXECUTOR, mode);
+        DrawingServerImpl server = new DrawingServerImpl(
+                new ServerConfiguration(props));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        // Strokes are made up front, and stamped as they are broadcast.
+        SyntheticStrokes generator = new SyntheticStrokes(42, 1024, 1024);
+        Map<DrawingCommand, Integer> index = new IdentityHashMap<DrawingCommand, Integer>();
+        List<DrawingCommand> cmds = new ArrayList<DrawingCommand>();
+        for (int i = 0; i < WARMUP_STROKES + strokes; i++) {
+            DrawingCommand cmd = generator.next(0.2, 20, 100);
+            index.put(cmd, i);
+            cmds.add(cmd);
+        }
+        long[] sentNanos = new long[cmds.size()];
+        long[] latencies = new long[clients * strokes];
+        AtomicInteger received = new AtomicInteger();
+
+        List<SlowClient> registered = new ArrayList<SlowClient>();
+        for (int i = 0; i < clients; i++) {
+            SlowClient client = new SlowClient("client" + i, callMillis,
+                    index, sentNanos, latencies, received);
+            server.addDrawingClient(client);
+            registered.add(client);
+        }
+        long heap = usedHeap();
+        long rss = residentMemory();
+
+        for (int i = 0; i < cmds.size(); i++) {
+            sentNanos[i] = System.nanoTime();
+            server.broadcastDrawingCommand("generator", cmds.get(i));
+            Thread.sleep(intervalMillis);
+        }
+        while (received.get() < latencies.length) {
+            Thread.sleep(10);
+        }
+
+        Arrays.sort(latencies);
+        OUT.printf("%-8s %8d %8d %10d %10.1f %10.1f %10.1f %10.1f%n", mode,
+                clients, strokes, threads.getPeakThreadCount(),
+                heap / (1024.0 * 1024.0), rss / (1024.0 * 1024.0),
+                percentile(latencies, 0.50) / 1e6,
+                percentile(latencies, 0.99) / 1e6);
+
+        for (SlowClient client : registered) {
+            server.removeDrawingClient(client);
+        }
+        UnicastRemoteObject.unexportObject(server, true);
+        server.fThreadPool.shutdownNow();
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        int i = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(i, sorted.length - 1))];
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the process's resident memory in bytes, which unlike the heap
+     * includes the stacks of platform threads, or -1 if it is not known.
+     * Only Linux is supported.
+     */
+    private static long residentMemory() {
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(
+                    "/proc/self/status"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("VmRSS:")) {
+                        String kb = line.substring(6).trim().split("\\s+")[0];
+                        return Long.parseLong(kb) * 1024;
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Not Linux.
+        }
+        return -1;
+    }
+
+    /**
+     * Client that blocks for a fixed time in every call, then records the
+     * delivery latency of each command it was sent after the warm-up.
+     */
+    private static class SlowClient implements DrawingClient {
+        String fName;
+        long fCallMillis;
+        Map<DrawingCommand, Integer> fIndex;
+        long[] fSentNanos;
+        long[] fLatencies;
+        AtomicInteger fReceived;
+
+        SlowClient(String name, long callMillis,
+                Map<DrawingCommand, Integer> index, long[] sentNanos,
+                long[] latencies, AtomicInteger received) {
+            fName = name;
+            fCallMillis = callMillis;
+            fIndex = index;
+            fSentNanos = sentNanos;
+            fLatencies = latencies;
+            fReceived = received;
+        }
+
+        public String getName() {
+            return fName;
+        }
+
+        public void receiveDrawingCommandFromServer(DrawingCommand cmd) {
+            receiveDrawingCommandsFromServer(Arrays.asList(cmd));
+        }
+
+        public void receiveSequencedCommandsFromServer(long sequence,
+                List<DrawingCommand> cmds) {
+            receiveDrawingCommandsFromServer(cmds);
+        }
+
+        public void receiveDrawingCommandsFromServer(List<DrawingCommand> cmds) {
+            call();
+            long now = System.nanoTime();
+            for (DrawingCommand cmd : cmds) {
+                int i = fIndex.get(cmd);
+                if (i >= WARMUP_STROKES) {
+                    fLatencies[fReceived.getAndIncrement()] = now
+                            - fSentNanos[i];
+                }
+            }
+        }
+
+        public void receiveSnapshotFromServer(DrawingSnapshot snapshot) {
+            call();
+        }
+
+        public void receivePreviewsFromServer(List<DrawingPreview> previews) {
+            call();
+        }
+
+        private void call() {
+            try {
+                Thread.sleep(fCallMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package server;
+
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import harness.Microbenchmark;
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPreview;
+import service_interface.DrawingSnapshot;
+import client.commands.SyntheticStrokes;
+
+/**
+ * Microbenchmarks of DrawingServerImpl.broadcastDrawingCommand fanning a
+ * command out to a number of in-process clients that do nothing with it.
+ * Client queues drop their oldest command when full, so that what is timed
+ * is the fan-out itself rather than waiting for dispatchers to catch up.
+ * 
+ * @author Andrew
+ * 
+ */
+public class FanOutMicrobenchmarks {
+
+    private static final int[] CLIENT_COUNTS = { 10, 100, 1000 };
+    private static final int STROKES = 1024;
+
+    /**
+     * Returns the fan-out benchmarks, for each number of clients.
+     */
+    public static List<Microbenchmark> all() {
+        List<Microbenchmark> benchmarks = new ArrayList<Microbenchmark>();
+        for (final int clients : CLIENT_COUNTS) {
+            benchmarks.add(new Microbenchmark(
+                    "DrawingServerImpl.broadcastDrawingCommand") {
+                DrawingServerImpl fServer;
+                List<DrawingCommand> fCmds;
+                int fNext;
+
+                public void setUp() throws Exception {
+                    Properties props = new Properties();
+                    props.setProperty(ServerConfiguration.CHECKPOINT_THRESHOLD,
+                            "0");
+                    props.setProperty(
+                            ServerConfiguration.CLIENT_QUEUE_OVERFLOW_POLICY,
+                            "DropOldest");
+                    fServer = new DrawingServerImpl(new ServerConfiguration(
+                            props));
+                    for (int i = 0; i < clients; i++) {
+                        fServer.addDrawingClient(new StubClient("client" + i));
+                    }
+
+                    SyntheticStrokes generator = new SyntheticStrokes(42,
+                            1024, 1024);
+                    fCmds = new ArrayList<DrawingCommand>();
+                    for (int i = 0; i < STROKES; i++) {
+                        fCmds.add(generator.next(0.2, 20, 100));
+                    }
+                }
+
+                public Object run() throws Exception {
+                    DrawingCommand cmd = fCmds.get(fNext++ % STROKES);
+                    fServer.broadcastDrawingCommand("client0", cmd);
+
+                    // Keep the log from growing without bound.
+                    synchronized (fServer) {
+                        if (fServer.fCompletedDrawingCommands.size() >= STROKES) {
+                            fServer.fCompletedDrawingCommands.clear();
+                        }
+                    }
+                    return cmd;
+                }
+
+                public void tearDown() throws Exception {
+                    UnicastRemoteObject.unexportObject(fServer, true);
+                    fServer.fThreadPool.shutdownNow();
+                }
+            }.param("clients", clients));
+        }
+        return benchmarks;
+    }
+
+    /**
+     * Client that discards whatever it is sent.
+     */
+    private static class StubClient implements DrawingClient {
+        String fName;
+
+        StubClient(String name) {
+            fName = name;
+        }
+
+        public String getName() {
+            return fName;
+        }
+
+        public void receiveDrawingCommandFromServer(DrawingCommand cmd) {
+        }
+
+        public void receiveSequencedCommandsFromServer(long sequence,
+                List<DrawingCommand> cmds) {
+            receiveDrawingCommandsFromServer(cmds);
+        }
+
+        public void receiveDrawingCommandsFromServer(List<DrawingCommand> cmds) {
+        }
+
+        public void receiveSnapshotFromServer(DrawingSnapshot snapshot) {
+        }
+
+        public void receivePreviewsFromServer(List<DrawingPreview> previews) {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package server;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Properties;
+
+import client.commands.SyntheticStrokes;
+
+/**
+ * Measures how long a drawing server takes to restart from its journal as the
+ * session grows, with and without raster checkpointing of the command log.
+ * 
+ * For each session length the benchmark broadcasts that many synthetic
+ * strokes to a fresh, journalling server, closes its journal as a shutdown
+ * would and then times the construction of a second server that recovers from
+ * the same journal directory.
+ * 
+ * Usage: JournalBenchmark [maximum strokes]
+ * 
+ * @author Andrew
+ * 
+ */
+public class JournalBenchmark {
+
+    private static final PrintStream OUT = System.out;
+
+    public static void main(String[] args) throws Exception {
+        int maxStrokes = 1000000;
+        if (args.length == 1) {
+            maxStrokes = Integer.parseInt(args[0]);
+        }
+
+        // Keep the server's per-command logging out of the measurements.
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+
+        OUT.printf("%-12s %10s %14s %14s %14s%n", "mode", "strokes",
+                "recovered", "journal MB", "restart ms");
+        for (int strokes = 1000; strokes <= maxStrokes; strokes *= 10) {
+            run("log only", strokes, 0);
+            run("checkpoint", strokes, 10000);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String mode, int strokes, int threshold)
+            throws Exception {
+        File directory = File.createTempFile("journal", "");
+        directory.delete();
+
+        Properties props = new Properties();
+        props.setProperty(ServerConfiguration.CHECKPOINT_THRESHOLD,
+                Integer.toString(threshold));
+        props.setProperty(ServerConfiguration.CHECKPOINT_TAIL, "1000");
+        props.setProperty(ServerConfiguration.CHECKPOINT_WIDTH, "1024");
+        props.setProperty(ServerConfiguration.CHECKPOINT_HEIGHT, "1024");
+        props.setProperty(ServerConfiguration.JOURNAL_DIRECTORY,
+                directory.getPath());
+        ServerConfiguration configuration = new ServerConfiguration(props);
+
+        DrawingServerImpl server = new DrawingServerImpl(configuration);
+        SyntheticStrokes generator = new SyntheticStrokes(42, 1024, 1024);
+        for (int i = 0; i < strokes; i++) {
+            server.broadcastDrawingCommand("generator",
+                    generator.next(0.2, 20, 100));
+        }
+        waitForCompaction(server);
+        stop(server);
+
+        long journalBytes = 0;
+        for (File file : directory.listFiles()) {
+            journalBytes += file.length();
+        }
+
+        long start = System.nanoTime();
+        DrawingServerImpl restarted = new DrawingServerImpl(configuration);
+        long restartNanos = System.nanoTime() - start;
+
+        OUT.printf("%-12s %10d %14d %14.1f %14.1f%n", mode, strokes,
+                restarted.fCompletedDrawingCommands.size(),
+                journalBytes / (1024.0 * 1024.0), restartNanos / 1e6);
+
+        stop(restarted);
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static void waitForCompaction(DrawingServerImpl server)
+            throws InterruptedException {
+        while (true) {
+            synchronized (server) {
+                if (!server.fCompacting) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static void stop(DrawingServerImpl server) throws Exception {
+        server.fJournal.close();
+        UnicastRemoteObject.unexportObject(server, true);
+        server.fThreadPool.shutdownNow();
+    }
+}
@@ -0,0 +1,178 @@
+package server;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import client.NioServerConnection;
+import client.commands.SyntheticStrokes;
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPreview;
+import service_interface.DrawingServer;
+import service_interface.DrawingSnapshot;
+
+/**
+ * Compares the RMI and NIO transports with many clients connected to one
+ * server on localhost. For each transport the benchmark connects the clients,
+ * broadcasts a burst of strokes and waits until every client has received
+ * every stroke. It reports how long connecting took, the number of live
+ * threads in the process once all clients are connected, and the delivery
+ * rate.
+ * 
+ * Clients and server share the process, so thread counts include the client
+ * side: an NIO client runs one reader thread, while RMI shares connection
+ * threads between clients. Run each transport in a fresh process, so that
+ * idle threads left by one do not count against the other.
+ * 
+ * Usage: TransportBenchmark rmi|nio [clients] [strokes]
+ * 
+ * @author Andrew
+ * 
+ */
+public class TransportBenchmark {
+
+    private static final PrintStream OUT = System.out;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length >= 1 ? args[0] : "nio";
+        int clients = 1000;
+        int strokes = 200;
+        if (args.length >= 2) {
+            clients = Integer.parseInt(args[1]);
+        }
+        if (args.length >= 3) {
+            strokes = Integer.parseInt(args[2]);
+        }
+
+        // Keep the server's per-command logging out of the measurements.
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {
+            }
+        }));
+
+        OUT.printf("%-6s %8s %8s %12s %12s %14s%n", "mode", "clients",
+                "strokes", "connect ms", "threads", "deliveries/s");
+        run(mode, clients, strokes);
+        System.exit(0);
+    }
+
+    private static void run(String mode, int clients, int strokes)
+            throws Exception {
+        Properties props = new Properties();
+        props.setProperty(ServerConfiguration.CHECKPOINT_THRESHOLD, "0");
+        ServerConfiguration configuration = new ServerConfiguration(props);
+        DrawingRoomDirectoryImpl rooms = new DrawingRoomDirectoryImpl(
+                configuration);
+        NioDrawingServer nio = null;
+        if (mode.equals("nio")) {
+            nio = new NioDrawingServer(rooms, 0, configuration);
+            new Thread(nio, "nio-transport").start();
+        }
+
+        AtomicLong received = new AtomicLong();
+        List<CountingClient> counting = new ArrayList<CountingClient>();
+        List<DrawingServer> servers = new ArrayList<DrawingServer>();
+
+        long start = System.nanoTime();
+        for (int i = 0; i <= clients; i++) {
+            CountingClient client = new CountingClient("client" + i, received);
+            DrawingServer server = connect(mode, rooms, nio, client);
+            server.addDrawingClient(client);
+            counting.add(client);
+            servers.add(server);
+        }
+        long connectNanos = System.nanoTime() - start;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        // The last client broadcasts, so is not sent its own strokes.
+        DrawingServer broadcaster = servers.get(clients);
+        String sender = counting.get(clients).getName();
+        SyntheticStrokes generator = new SyntheticStrokes(42, 1024, 1024);
+        List<DrawingCommand> cmds = new ArrayList<DrawingCommand>();
+        for (int i = 0; i < strokes; i++) {
+            cmds.add(generator.next(0.2, 20, 100));
+        }
+
+        long expected = (long) clients * strokes;
+        start = System.nanoTime();
+        for (DrawingCommand cmd : cmds) {
+            broadcaster.broadcastDrawingCommand(sender, cmd);
+        }
+        while (received.get() < expected) {
+            Thread.sleep(1);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        OUT.printf("%-6s %8d %8d %12.0f %12d %14.0f%n", mode, clients,
+                strokes, connectNanos / 1e6, threads, expected / seconds);
+
+        for (int i = 0; i <= clients; i++) {
+            servers.get(i).removeDrawingClient(counting.get(i));
+            if (mode.equals("rmi")) {
+                UnicastRemoteObject.unexportObject(counting.get(i), true);
+            }
+        }
+        if (nio != null) {
+            nio.close();
+        }
+        rooms.close();
+        UnicastRemoteObject.unexportObject(rooms.defaultRoom(), true);
+        UnicastRemoteObject.unexportObject(rooms, true);
+    }
+
+    private static DrawingServer connect(String mode,
+            DrawingRoomDirectoryImpl rooms, NioDrawingServer nio,
+            CountingClient client) throws Exception {
+        if (mode.equals("nio")) {
+            return new NioServerConnection("localhost", nio.port(), null);
+        }
+        // Call the server through its stub, and have it call back through
+        // the client's, as separate processes would.
+        UnicastRemoteObject.exportObject(client, 0);
+        return (DrawingServer) UnicastRemoteObject.toStub(rooms.defaultRoom());
+    }
+
+    /**
+     * Client that counts the commands it is sent.
+     */
+    private static class CountingClient implements DrawingClient {
+        String fName;
+        AtomicLong fReceived;
+
+        CountingClient(String name, AtomicLong received) {
+            fName = name;
+            fReceived = received;
+        }
+
+        public String getName() {
+            return fName;
+        }
+
+        public void receiveDrawingCommandFromServer(DrawingCommand cmd) {
+            fReceived.incrementAndGet();
+        }
+
+        public void receiveSequencedCommandsFromServer(long sequence,
+                List<DrawingCommand> cmds) {
+            receiveDrawingCommandsFromServer(cmds);
+        }
+
+        public void receiveDrawingCommandsFromServer(List<DrawingCommand> cmds) {
+            fReceived.addAndGet(cmds.size());
+        }
+
+        public void receiveSnapshotFromServer(DrawingSnapshot snapshot)
+                throws RemoteException {
+        }
+
+        public void receivePreviewsFromServer(List<DrawingPreview> previews) {
+        }
+    }
+}
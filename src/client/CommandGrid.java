@@ -0,0 +1,201 @@
+package client;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import service_interface.BoundedDrawingCommand;
+import service_interface.DrawingCommand;
+
+/**
+ * A spatial index of committed drawing commands, by sequence number. The
+ * canvas is divided into square cells and each command is listed in every
+ * cell its bounds overlap, so that the commands touching a region can be
+ * found without visiting the rest. Commands without bounds, and commands so
+ * large they would be listed in too many cells, are kept apart and returned
+ * by every query.
+ * 
+ * Commands must be added in sequence number order, starting at zero. Queries
+ * return sequence numbers in ascending order, which is the order in which the
+ * commands must be drawn.
+ * 
+ * @author Andrew
+ * 
+ */
+public class CommandGrid {
+
+    // Width and height of a cell, in pixels.
+    private static final int CELL_SIZE = 128;
+
+    // Largest number of cells a command is listed in.
+    private static final int MAX_CELLS = 64;
+
+    // Sequence numbers of the commands overlapping each cell, in ascending
+    // order, indexed by the cell's coordinates packed into a long.
+    private Map<Long, List<Integer>> fCells;
+
+    // Sequence numbers of commands returned by every query.
+    private List<Integer> fUnindexed;
+
+    // Bounds of each command, indexed by sequence number, or null for
+    // commands without bounds.
+    private List<Rectangle> fBounds;
+
+    /**
+     * Creates an empty index.
+     */
+    public CommandGrid() {
+        fCells = new HashMap<Long, List<Integer>>();
+        fUnindexed = new ArrayList<Integer>();
+        fBounds = new ArrayList<Rectangle>();
+    }
+
+    /**
+     * Adds the command with the next sequence number.
+     */
+    public void add(DrawingCommand cmd) {
+        int sequence = fBounds.size();
+        Rectangle bounds = null;
+        if (cmd instanceof BoundedDrawingCommand) {
+            bounds = ((BoundedDrawingCommand) cmd).bounds();
+        }
+        fBounds.add(bounds);
+
+        if (bounds == null) {
+            fUnindexed.add(sequence);
+            return;
+        }
+        int firstX = cell(bounds.x);
+        int lastX = cell(bounds.x + bounds.width - 1);
+        int firstY = cell(bounds.y);
+        int lastY = cell(bounds.y + bounds.height - 1);
+        if ((long) (lastX - firstX + 1) * (lastY - firstY + 1) > MAX_CELLS) {
+            fUnindexed.add(sequence);
+            return;
+        }
+        for (int x = firstX; x <= lastX; x++) {
+            for (int y = firstY; y <= lastY; y++) {
+                Long key = key(x, y);
+                List<Integer> cell = fCells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<Integer>();
+                    fCells.put(key, cell);
+                }
+                cell.add(sequence);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of commands indexed.
+     */
+    public int size() {
+        return fBounds.size();
+    }
+
+    /**
+     * Returns, in ascending order, the sequence numbers below a limit of the
+     * commands that may draw within a region: those whose bounds intersect
+     * it, and those without bounds.
+     * 
+     * @param region
+     *            the region, in canvas coordinates.
+     * @param limit
+     *            one more than the highest sequence number to return.
+     */
+    public List<Integer> query(Rectangle region, int limit) {
+        return query(region, 0, limit);
+    }
+
+    /**
+     * Returns, in ascending order, the sequence numbers in a range of the
+     * commands that may draw within a region.
+     * 
+     * @param region
+     *            the region, in canvas coordinates.
+     * @param from
+     *            the lowest sequence number to return.
+     * @param limit
+     *            one more than the highest sequence number to return.
+     */
+    public List<Integer> query(Rectangle region, int from, int limit) {
+        BitSet found = new BitSet(Math.max(0, limit - from));
+        addRange(fUnindexed, from, limit, found);
+
+        if (!region.isEmpty()) {
+            int firstX = cell(region.x);
+            int lastX = cell(region.x + region.width - 1);
+            int firstY = cell(region.y);
+            int lastY = cell(region.y + region.height - 1);
+            if ((long) (lastX - firstX + 1) * (lastY - firstY + 1) > fCells
+                    .size()) {
+                // A region larger than the drawing, as seen zoomed out: visit
+                // the cells in use rather than every cell of the region.
+                for (Map.Entry<Long, List<Integer>> cell : fCells.entrySet()) {
+                    long key = cell.getKey();
+                    int x = (int) (key >> 32);
+                    int y = (int) key;
+                    if (x >= firstX && x <= lastX && y >= firstY && y <= lastY) {
+                        addRange(cell.getValue(), from, limit, found);
+                    }
+                }
+            } else {
+                for (int x = firstX; x <= lastX; x++) {
+                    for (int y = firstY; y <= lastY; y++) {
+                        List<Integer> cell = fCells.get(key(x, y));
+                        if (cell != null) {
+                            addRange(cell, from, limit, found);
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Integer> sequences = new ArrayList<Integer>(found.cardinality());
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            Rectangle bounds = fBounds.get(from + i);
+            if (bounds == null || bounds.intersects(region)) {
+                sequences.add(from + i);
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * Implementation method to mark the sequence numbers in an ascending list
+     * that lie in a range, relative to the start of the range.
+     */
+    private static void addRange(List<Integer> sequences, int from,
+            int limit, BitSet found) {
+        int start = Collections.binarySearch(sequences, from);
+        if (start < 0) {
+            start = -start - 1;
+        }
+        for (int i = start; i < sequences.size(); i++) {
+            int sequence = sequences.get(i);
+            if (sequence >= limit) {
+                break;
+            }
+            found.set(sequence - from);
+        }
+    }
+
+    /**
+     * Implementation method returning the cell coordinate of a pixel
+     * coordinate.
+     */
+    private static int cell(int coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+
+    /**
+     * Implementation method packing the coordinates of a cell into a key.
+     */
+    private static Long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,96 @@
+package client;
+
+import java.util.List;
+
+import service_interface.DrawingCommand;
+
+/**
+ * An append-only list of committed drawing commands, indexed by sequence
+ * number in the order they were appended. Readers never lock: size() is
+ * published after the commands it counts, so a reader that reads size() once
+ * can get() every command below it while writers go on appending. Writers
+ * lock only against each other.
+ * 
+ * Commands are held in fixed size chunks, so that appending never copies
+ * commands already stored; only the small array of chunks is copied as it
+ * fills.
+ * 
+ * @author Andrew
+ * 
+ */
+public class CommandStore {
+
+    // Number of commands in a chunk; a power of two.
+    private static final int CHUNK_SIZE = 1024;
+    private static final int CHUNK_SHIFT = 10;
+
+    // Chunks of commands, created as they are needed. Copied to a larger
+    // array when every chunk is in use.
+    private volatile DrawingCommand[][] fChunks;
+
+    // Number of commands published to readers.
+    private volatile int fSize;
+
+    /**
+     * Creates an empty store.
+     */
+    public CommandStore() {
+        fChunks = new DrawingCommand[1][];
+        fChunks[0] = new DrawingCommand[CHUNK_SIZE];
+        fSize = 0;
+    }
+
+    /**
+     * Appends a command, giving it the next sequence number.
+     */
+    synchronized public void append(DrawingCommand cmd) {
+        store(fSize, cmd);
+        fSize++;
+    }
+
+    /**
+     * Appends a list of commands, in order. Readers see either none of them
+     * or all of them.
+     */
+    synchronized public void appendAll(List<DrawingCommand> cmds) {
+        int size = fSize;
+        for (DrawingCommand cmd : cmds) {
+            store(size++, cmd);
+        }
+        fSize = size;
+    }
+
+    /**
+     * Returns the number of commands that may be read.
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Returns the command with a sequence number below a value previously
+     * returned by size().
+     */
+    public DrawingCommand get(int sequence) {
+        return fChunks[sequence >>> CHUNK_SHIFT][sequence & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Implementation method to place a command in the chunk for its sequence
+     * number, adding chunks as needed. The command is not yet published.
+     */
+    private void store(int sequence, DrawingCommand cmd) {
+        DrawingCommand[][] chunks = fChunks;
+        int chunk = sequence >>> CHUNK_SHIFT;
+        if (chunk == chunks.length) {
+            DrawingCommand[][] grown = new DrawingCommand[chunks.length * 2][];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            chunks = grown;
+            fChunks = chunks;
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new DrawingCommand[CHUNK_SIZE];
+        }
+        chunks[chunk][sequence & (CHUNK_SIZE - 1)] = cmd;
+    }
+}
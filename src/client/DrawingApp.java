@@ -1,233 +1,388 @@
-package client;
-
-import java.awt.Dimension;
-import java.awt.Toolkit;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.rmi.Naming;
-import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Properties;
-
-import javax.swing.JFrame;
-import javax.swing.JMenu;
-import javax.swing.JMenuBar;
-import javax.swing.JMenuItem;
-import javax.swing.JPanel;
-
-import service_interface.DrawingClient;
-import service_interface.DrawingCommand;
-import service_interface.DrawingServer;
-
-/**
- * Application program to present the user with a GUI comprising a drawing space
- * and a menu of drawing commands.
- * 
- * @author Ian Warren
- * 
- */
-public class DrawingApp extends JPanel {
-
-    private DrawingSpace fDrawingSpace;
-    private JMenu fDrawMenu;
-    private DrawingServer fServer;
-    private DrawingClient fClient;
-
-    /**
-     * Creates a new DrawingApp instance.
-     * 
-     * @param propertiesFileName
-     *            the name of a properties file that lists the names of classes
-     *            that implement the DrawingCommand interface. For each class
-     *            named in the properties file, an attempt is made to load and
-     *            instantiate it. Successfully loaded commands are offered to
-     *            the user by being added to the application's "Draw" menu.
-     */
-    public DrawingApp(String propertiesFileName, String registryHost,
-            int registryPort) {
-        try {
-            System.out.println("Looking up server at " + registryHost + ":"
-                    + registryPort);
-            fDrawingSpace = new DrawingSpace();
-            fServer = (DrawingServer) LocateRegistry.getRegistry(registryHost,
-                    registryPort).lookup("drawingserver");
-
-            System.out.println("Got remote reference to server.");
-
-            // Create a client so that this drawing app can interact with the
-            // master drawing server.
-            fClient = new DrawingClientImpl(this, fDrawingSpace, fServer);
-
-            // Deregister the client from the server on shutdown.
-            Runtime.getRuntime().addShutdownHook(new Thread() {
-                public void run() {
-                    try {
-                        fServer.removeDrawingClient(fClient);
-                    } catch (RemoteException e) {
-                        e.printStackTrace();
-                    }
-                }
-            });
-
-            // Construct GUI.
-            JFrame frame = new JFrame("Drawing application");
-            frame.setSize(400, 400);
-            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-
-            JMenuBar menuBar = new JMenuBar();
-            fDrawMenu = new JMenu("Draw");
-            menuBar.add(fDrawMenu);
-            frame.setJMenuBar(menuBar);
-            frame.add(fDrawingSpace);
-
-            // Load drawing commands.
-            List<DrawingCommand> drawingCommands = loadDrawingCommands(propertiesFileName);
-            for (DrawingCommand command : drawingCommands) {
-                addDrawingCommand(command);
-
-            }
-
-            // Have window centred on screen.
-            Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
-            Dimension frameSize = frame.getSize();
-            frame.setLocation(screenSize.width / 2 - (frameSize.width / 2),
-                    screenSize.height / 2 - (frameSize.height / 2));
-            frame.setVisible(true);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Attempts to add a new DrawingCommand to the application's "Draw" menu.
-     * This succeeds only if a DrawingCommand with the same name is not already
-     * listed within the menu. Where successful, the application's DrawingSpace
-     * object is added as a listener to the new DrawingCommand; hence any
-     * drawing events generated by the DrawingCommand object are received by
-     * DrawingSpace instance.
-     * 
-     * @param command
-     *            the new DrawingCommand object.
-     */
-    public void addDrawingCommand(DrawingCommand command) {
-        int entries = fDrawMenu.getItemCount();
-        int index = 0;
-        boolean match = false;
-
-        while (index < entries && (!match)) {
-            JMenuItem item = fDrawMenu.getItem(index);
-            DrawingCommand existingCommand = ((DrawingAction) item.getAction())
-                    .drawingCommand();
-            if (existingCommand.name().equals(command.name())) {
-                match = true;
-            }
-            index++;
-        }
-
-        if (!match) {
-            fDrawMenu.add(new JMenuItem(new DrawingAction(fDrawingSpace,
-                    command)));
-            command.addDrawingCommandListener(fDrawingSpace);
-        }
-    }
-
-    /**
-     * Returns a list, possibly empty, of DrawingCommand objects. This method
-     * attempts to access a specified properties file that is expected to name
-     * classes that implement the DrawingCommand interface. For each named
-     * DrawingCommand implementation, it is instantiated and returned in the
-     * list.
-     * 
-     * @param filename
-     *            the name of the properties file.
-     * @return a list of DrawingCommand objects.
-     */
-    private List<DrawingCommand> loadDrawingCommands(String filename) {
-        final String COMMANDS = "drawing_command_classes";
-
-        List<DrawingCommand> commands = new ArrayList<DrawingCommand>();
-        File file = new File(filename);
-
-        try {
-            // Create a new properties object.
-            Properties props = new Properties();
-
-            // Attempt to read property value from file.
-            InputStream in = new FileInputStream(file);
-            props.load(in);
-            in.close();
-
-            // Split, based on white space, the list of named classes.
-            String allDrawingCommandClassNames = props.getProperty(COMMANDS);
-            String[] drawingCommandClassNames = null;
-            if (allDrawingCommandClassNames != null) {
-                drawingCommandClassNames = allDrawingCommandClassNames
-                        .split("\\s+");
-            }
-
-            // Attempt to load and instantiate classes. In the event of an
-            // exception loading a class, ignore it and move on to the next
-            // class.
-            for (int i = 0; i < drawingCommandClassNames.length; i++) {
-                String className = drawingCommandClassNames[i];
-                try {
-                    Class c = Class.forName(className);
-                    DrawingCommand command = (DrawingCommand) c.newInstance();
-                    commands.add(command);
-                } catch (ClassNotFoundException e) {
-                    // Named class does not exist.
-                    System.err.println("Class " + className
-                            + " does not exist.");
-                } catch (IllegalAccessException e) {
-                    // Named class does not have a visible default constructor.
-                    System.err.println("Class " + className
-                            + " cannot be instantiated.");
-                } catch (InstantiationException e) {
-                    // Named class cannot be instantiated, e.g. its abstract.
-                    System.err.println("Class " + className
-                            + " cannot be instantiated.");
-                } catch (ClassCastException e) {
-                    // Named class is not an implementation of DrawingCommand.
-                    System.err.println("Class " + className
-                            + " does not implement DrawingCommand.");
-                }
-            }
-
-        } catch (IOException e) {
-            // Properties file not found, or an error has occurred reading the
-            // file.
-            System.err.println("File + " + file.getName() + " not found.");
-        } catch (NullPointerException e) {
-            // Properties key COMMANDS does not appear in the properties file.
-            System.err.println("Property key " + COMMANDS + " not found.");
-        }
-
-        // Return the list of DrawingCommand objects.
-        return commands;
-    }
-
-    /**
-     * Main program to run the DrawingApp client.
-     * 
-     * @param args
-     *            Command line arguments can be supplied to name a properties
-     *            file that names classes which implement the DrawingCommand
-     *            interface, an RMI registry host and port.
-     */
-    public static void main(String[] args) {
-        if (System.getSecurityManager() == null) {
-            System.setSecurityManager(new SecurityManager());
-        }
-
-        if (args.length == 3) {
-            // Name of properties file specified on the command line.
-            new DrawingApp(args[0], args[1], Integer.parseInt(args[2]));
-        } else {
-            new DrawingApp(null, "localhost", 1099);
-        }
-    }
-}
+package client;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.rmi.Naming;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.swing.AbstractAction;
+import javax.swing.JFrame;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JPanel;
+
+import service_interface.ConfigurableDrawingCommand;
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingRoomDirectory;
+import service_interface.DrawingServer;
+import service_interface.ExecutorMode;
+
+/**
+ * Application program to present the user with a GUI comprising a drawing space
+ * and a menu of drawing commands.
+ * 
+ * @author Ian Warren
+ * 
+ */
+public class DrawingApp extends JPanel {
+
+    private DrawingSpace fDrawingSpace;
+    private JMenu fDrawMenu;
+
+    // Names of the commands listed in the Draw menu.
+    private Set<String> fDrawMenuNames = new HashSet<String>();
+    private volatile DrawingServer fServer;
+    private DrawingClient fClient;
+
+    // Where the server is found, so that it can be looked up again.
+    private String fRegistryHost;
+    private int fRegistryPort;
+    private String fRoom;
+
+    // Properties passed to ConfigurableDrawingCommand objects.
+    private Properties fProperties = new Properties();
+
+    /**
+     * Creates a new DrawingApp instance.
+     * 
+     * @param propertiesFileName
+     *            the name of a properties file that lists the names of classes
+     *            that implement the DrawingCommand interface. For each class
+     *            named in the properties file, an attempt is made to load and
+     *            instantiate it. Successfully loaded commands are offered to
+     *            the user by being added to the application's "Draw" menu.
+     * @param room
+     *            the name of the room to join, or null to join the server's
+     *            default room.
+     */
+    public DrawingApp(String propertiesFileName, String registryHost,
+            int registryPort, String room) {
+        fRegistryHost = registryHost;
+        fRegistryPort = registryPort;
+        fRoom = room;
+        try {
+            System.out.println("Looking up server at " + registryHost + ":"
+                    + registryPort);
+            fDrawingSpace = new DrawingSpace();
+
+            // Received commands may be added to the menu as soon as the
+            // client is registered with the server, so create it first.
+            fDrawMenu = new JMenu("Draw");
+
+            // Load drawing commands, and the properties that choose a
+            // transport.
+            List<DrawingCommand> drawingCommands = loadDrawingCommands(propertiesFileName);
+
+            lookUpServer();
+
+            System.out.println("Got remote reference to server.");
+
+            // Create a client so that this drawing app can interact with the
+            // master drawing server.
+            DrawingClientImpl client = new DrawingClientImpl(this,
+                    fDrawingSpace, fServer, ExecutorMode.parse(fProperties
+                            .getProperty("dispatch_executor")));
+            fClient = client;
+            if (isNioTransport()) {
+                // The server calls back over the connection, not over RMI.
+                UnicastRemoteObject.unexportObject(client, true);
+            }
+
+            // Deregister the client from the server on shutdown.
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    try {
+                        fServer.removeDrawingClient(fClient);
+                    } catch (RemoteException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+
+            // Construct GUI.
+            JFrame frame = new JFrame(room == null ? "Drawing application"
+                    : "Drawing application - " + room);
+            frame.setSize(400, 400);
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+            JMenuBar menuBar = new JMenuBar();
+            menuBar.add(fDrawMenu);
+            menuBar.add(createViewMenu());
+            frame.setJMenuBar(menuBar);
+            frame.add(fDrawingSpace);
+
+            client.setPreviewInterval(previewInterval());
+            for (DrawingCommand command : drawingCommands) {
+                addDrawingCommand(command);
+
+            }
+
+            // Have window centred on screen.
+            Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
+            Dimension frameSize = frame.getSize();
+            frame.setLocation(screenSize.width / 2 - (frameSize.width / 2),
+                    screenSize.height / 2 - (frameSize.height / 2));
+            frame.setVisible(true);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Attempts to add a new DrawingCommand to the application's "Draw" menu.
+     * This succeeds only if a DrawingCommand with the same name is not already
+     * listed within the menu. Where successful, the application's DrawingSpace
+     * object is added as a listener to the new DrawingCommand; hence any
+     * drawing events generated by the DrawingCommand object are received by
+     * DrawingSpace instance. A ConfigurableDrawingCommand is configured with
+     * the application's properties. This is called for every command received
+     * from the server, so the names of the commands in the menu are kept in a
+     * set rather than found by walking the menu.
+     * 
+     * @param command
+     *            the new DrawingCommand object.
+     */
+    synchronized public void addDrawingCommand(DrawingCommand command) {
+        if (fDrawMenuNames.add(command.name())) {
+            if (command instanceof ConfigurableDrawingCommand) {
+                ((ConfigurableDrawingCommand) command).configure(fProperties);
+            }
+            fDrawMenu.add(new JMenuItem(new DrawingAction(fDrawingSpace,
+                    command)));
+            command.addDrawingCommandListener(fDrawingSpace);
+        }
+    }
+
+    /**
+     * Looks up the server for the room in the registry, or connects to its
+     * NIO transport. The server found replaces the one the application had,
+     * which may have been restarted. An NIO connection is made only once, as
+     * it connects again by itself when the client resumes.
+     * 
+     * @return the server.
+     */
+    synchronized public DrawingServer lookUpServer() throws RemoteException,
+            NotBoundException {
+        if (isNioTransport()) {
+            if (fServer == null) {
+                try {
+                    fServer = new NioServerConnection(fRegistryHost,
+                            nioPort(), fRoom);
+                } catch (IOException e) {
+                    throw new RemoteException("Unable to connect to server", e);
+                }
+            }
+            return fServer;
+        }
+
+        Registry registry = LocateRegistry.getRegistry(fRegistryHost,
+                fRegistryPort);
+        if (fRoom == null) {
+            fServer = (DrawingServer) registry.lookup("drawingserver");
+        } else {
+            DrawingRoomDirectory rooms = (DrawingRoomDirectory) registry
+                    .lookup("drawingrooms");
+            fServer = rooms.joinRoom(fRoom);
+        }
+        return fServer;
+    }
+
+    /**
+     * Returns a menu that zooms the drawing space's view about its centre, or
+     * shows the canvas at its own size.
+     */
+    private JMenu createViewMenu() {
+        JMenu menu = new JMenu("View");
+        menu.add(new JMenuItem(new AbstractAction("Zoom in") {
+            public void actionPerformed(ActionEvent event) {
+                fDrawingSpace.zoom(2, centre());
+            }
+        }));
+        menu.add(new JMenuItem(new AbstractAction("Zoom out") {
+            public void actionPerformed(ActionEvent event) {
+                fDrawingSpace.zoom(0.5, centre());
+            }
+        }));
+        menu.add(new JMenuItem(new AbstractAction("Actual size") {
+            public void actionPerformed(ActionEvent event) {
+                fDrawingSpace.resetView();
+            }
+        }));
+        return menu;
+    }
+
+    /**
+     * Returns the centre of the drawing space.
+     */
+    private Point centre() {
+        return new Point(fDrawingSpace.getWidth() / 2,
+                fDrawingSpace.getHeight() / 2);
+    }
+
+    /**
+     * Returns true if the transport property selects the NIO transport rather
+     * than RMI.
+     */
+    private boolean isNioTransport() {
+        String value = fProperties.getProperty("transport");
+        return value != null && value.trim().equalsIgnoreCase("nio");
+    }
+
+    /**
+     * Returns the port of the server's NIO transport, as given by the
+     * nio_port property.
+     */
+    private int nioPort() {
+        final String PORT = "nio_port";
+
+        String value = fProperties.getProperty(PORT);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Property " + PORT + " is not a number.");
+            }
+        }
+        return 1199;
+    }
+
+    /**
+     * Returns the minimum time between previews of an executing command, as
+     * given by the preview_interval_millis property, or the default if the
+     * property is absent.
+     */
+    private long previewInterval() {
+        final String INTERVAL = "preview_interval_millis";
+
+        String value = fProperties.getProperty(INTERVAL);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Property " + INTERVAL
+                        + " is not a number.");
+            }
+        }
+        return DrawingClientImpl.DEFAULT_PREVIEW_INTERVAL_MILLIS;
+    }
+
+    /**
+     * Returns a list, possibly empty, of DrawingCommand objects. This method
+     * attempts to access a specified properties file that is expected to name
+     * classes that implement the DrawingCommand interface. For each named
+     * DrawingCommand implementation, it is instantiated and returned in the
+     * list. The properties are kept so that they can be passed to
+     * ConfigurableDrawingCommand objects.
+     * 
+     * @param filename
+     *            the name of the properties file.
+     * @return a list of DrawingCommand objects.
+     */
+    private List<DrawingCommand> loadDrawingCommands(String filename) {
+        final String COMMANDS = "drawing_command_classes";
+
+        List<DrawingCommand> commands = new ArrayList<DrawingCommand>();
+        File file = new File(filename);
+
+        try {
+            // Create a new properties object.
+            Properties props = new Properties();
+
+            // Attempt to read property value from file.
+            InputStream in = new FileInputStream(file);
+            props.load(in);
+            in.close();
+            fProperties = props;
+
+            // Split, based on white space, the list of named classes.
+            String allDrawingCommandClassNames = props.getProperty(COMMANDS);
+            String[] drawingCommandClassNames = null;
+            if (allDrawingCommandClassNames != null) {
+                drawingCommandClassNames = allDrawingCommandClassNames
+                        .split("\\s+");
+            }
+
+            // Attempt to load and instantiate classes. In the event of an
+            // exception loading a class, ignore it and move on to the next
+            // class.
+            for (int i = 0; i < drawingCommandClassNames.length; i++) {
+                String className = drawingCommandClassNames[i];
+                try {
+                    Class c = Class.forName(className);
+                    DrawingCommand command = (DrawingCommand) c.newInstance();
+                    commands.add(command);
+                } catch (ClassNotFoundException e) {
+                    // Named class does not exist.
+                    System.err.println("Class " + className
+                            + " does not exist.");
+                } catch (IllegalAccessException e) {
+                    // Named class does not have a visible default constructor.
+                    System.err.println("Class " + className
+                            + " cannot be instantiated.");
+                } catch (InstantiationException e) {
+                    // Named class cannot be instantiated, e.g. its abstract.
+                    System.err.println("Class " + className
+                            + " cannot be instantiated.");
+                } catch (ClassCastException e) {
+                    // Named class is not an implementation of DrawingCommand.
+                    System.err.println("Class " + className
+                            + " does not implement DrawingCommand.");
+                }
+            }
+
+        } catch (IOException e) {
+            // Properties file not found, or an error has occurred reading the
+            // file.
+            System.err.println("File + " + file.getName() + " not found.");
+        } catch (NullPointerException e) {
+            // Properties key COMMANDS does not appear in the properties file.
+            System.err.println("Property key " + COMMANDS + " not found.");
+        }
+
+        // Return the list of DrawingCommand objects.
+        return commands;
+    }
+
+    /**
+     * Main program to run the DrawingApp client.
+     * 
+     * @param args
+     *            Command line arguments can be supplied to name a properties
+     *            file that names classes which implement the DrawingCommand
+     *            interface, an RMI registry host and port, optionally followed
+     *            by the name of a room to join.
+     */
+    public static void main(String[] args) {
+        if (System.getSecurityManager() == null) {
+            System.setSecurityManager(new SecurityManager());
+        }
+
+        if (args.length >= 3) {
+            // Name of properties file specified on the command line.
+            String room = null;
+            if (args.length >= 4 && args[3].trim().length() > 0) {
+                room = args[3].trim();
+            }
+            new DrawingApp(args[0], args[1], Integer.parseInt(args[2]), room);
+        } else {
+            new DrawingApp(null, "localhost", 1099, null);
+        }
+    }
+}
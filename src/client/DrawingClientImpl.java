@@ -1,50 +1,341 @@
-package client;
-
-import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import service_interface.DrawingClient;
-import service_interface.DrawingCommand;
-import service_interface.DrawingServer;
-
-public class DrawingClientImpl extends UnicastRemoteObject implements
-        DrawingClient, DrawingSpaceListener {
-
-    String fName;
-    DrawingApp fDrawingApp;
-    DrawingSpace fDrawingSpace;
-    DrawingServer fServer;
-    ExecutorService fThreadPool;
-
-    protected DrawingClientImpl(DrawingApp app, DrawingSpace space,
-            DrawingServer server) throws RemoteException {
-        fName = "canvas" + UUID.randomUUID();
-        fDrawingApp = app;
-        fDrawingSpace = space;
-        fServer = server;
-        fThreadPool = Executors.newCachedThreadPool();
-
-        fDrawingSpace.addDrawingSpaceListener(this);
-        fServer.addDrawingClient(this);
-    }
-
-    @Override
-    public String getName() throws RemoteException {
-        return fName;
-    }
-
-    @Override
-    synchronized public void receiveDrawingCommandFromServer(DrawingCommand cmd)
-            throws RemoteException {
-        fDrawingSpace.commitDrawingCommand(cmd);
-        fDrawingApp.addDrawingCommand(cmd);
-    }
-
-    @Override
-    public void drawingCommandExecuted(DrawingCommand cmd) {
-        fThreadPool.execute(new DrawingCommandBroadcaster(fServer, fName, cmd));
-    }
-}
+package client;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.Timer;
+
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPreview;
+import service_interface.DrawingServer;
+import service_interface.DrawingSnapshot;
+import service_interface.ExecutorMode;
+import service_interface.IncrementalDrawingCommand;
+import service_interface.PeerExecutor;
+
+/**
+ * A drawing client that receives commands and previews from the server and
+ * sends the commands drawn locally to it.
+ * 
+ * Commands and previews received from the server are not applied on the
+ * thread that delivers them. They are put in an inbox that the event dispatch
+ * thread drains at most once a frame, committing whatever has arrived as one
+ * batch with a single repaint, so that a flood of commands, such as the
+ * replay when joining a busy drawing, does not swamp the user interface.
+ * 
+ * The client keeps the sequence number of the last command it has received,
+ * so that after losing its connection it can resume from there rather than
+ * receive the whole drawing again. It reconnects to the server it looks up
+ * afresh, which may have been restarted. Commands drawn locally are sent with
+ * an identifier of their own, so that one sent again after a reconnect is not
+ * drawn twice.
+ * 
+ * A snapshot that ends before the last command received means the server has
+ * lost commands, e.g. by restarting without its journal. The server's drawing
+ * is then taken as it is: the snapshot replaces everything received before.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingClientImpl extends UnicastRemoteObject implements
+        DrawingClient, DrawingSpaceListener {
+
+    // Roughly one preview per frame at 30 frames per second.
+    public static final long DEFAULT_PREVIEW_INTERVAL_MILLIS = 33;
+
+    // Time to wait after something arrives in the inbox before draining it;
+    // one frame at 60 frames per second.
+    public static final int INBOX_DRAIN_DELAY_MILLIS = 16;
+
+    String fName;
+    DrawingApp fDrawingApp;
+    DrawingSpace fDrawingSpace;
+    volatile DrawingServer fServer;
+    Executor fThreadPool;
+    DrawingCommandBroadcaster fBroadcaster;
+
+    // Minimum time between previews of an executing command; zero disables
+    // previews.
+    long fPreviewIntervalMillis;
+
+    // State of the preview of the executing command: when it was last sent,
+    // and its progress mark then, or -1 if no preview has been sent yet.
+    long fLastPreviewMillis;
+    int fPreviewMark;
+
+    // Commands and previews received but not yet applied, and whether the
+    // event dispatch thread has been asked to drain them.
+    Queue<DrawingCommand> fInbox;
+    Queue<DrawingPreview> fPreviewInbox;
+    AtomicBoolean fDrainScheduled;
+    Timer fDrainTimer;
+
+    // Sequence number of the last command received from the server.
+    long fSequence;
+
+    // Whether the drawing is to be cleared before the inbox is next drained,
+    // and the checkpoint image to set then, or null. Guarded by the client's
+    // monitor, as is adding sequenced commands to the inbox.
+    boolean fClearPending;
+    BufferedImage fPendingCheckpointImage;
+
+    protected DrawingClientImpl(DrawingApp app, DrawingSpace space,
+            DrawingServer server, ExecutorMode mode) throws RemoteException {
+        fName = "canvas" + UUID.randomUUID();
+        fDrawingApp = app;
+        fDrawingSpace = space;
+        fServer = server;
+        // Running one call to the server at a time keeps previews and
+        // completed commands in the order they were produced.
+        fThreadPool = new PeerExecutor(mode.newExecutor(), 1);
+        fBroadcaster = new DrawingCommandBroadcaster(this, fName, fThreadPool);
+        fPreviewIntervalMillis = DEFAULT_PREVIEW_INTERVAL_MILLIS;
+        fPreviewMark = -1;
+
+        fInbox = new ConcurrentLinkedQueue<DrawingCommand>();
+        fPreviewInbox = new ConcurrentLinkedQueue<DrawingPreview>();
+        fDrainScheduled = new AtomicBoolean();
+        fDrainTimer = new Timer(INBOX_DRAIN_DELAY_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                drainInbox();
+            }
+        });
+        fDrainTimer.setRepeats(false);
+
+        fDrawingSpace.addDrawingSpaceListener(this);
+        fServer.addDrawingClient(this);
+    }
+
+    /**
+     * Sets the minimum time between previews of an executing command sent to
+     * other clients. Zero disables previews.
+     */
+    public void setPreviewInterval(long millis) {
+        fPreviewIntervalMillis = Math.max(0, millis);
+    }
+
+    @Override
+    public String getName() throws RemoteException {
+        return fName;
+    }
+
+    @Override
+    public void receiveDrawingCommandFromServer(DrawingCommand cmd)
+            throws RemoteException {
+        fInbox.add(cmd);
+        scheduleDrain();
+    }
+
+    @Override
+    public void receiveDrawingCommandsFromServer(List<DrawingCommand> cmds)
+            throws RemoteException {
+        fInbox.addAll(cmds);
+        scheduleDrain();
+    }
+
+    @Override
+    synchronized public void receiveSequencedCommandsFromServer(long sequence,
+            List<DrawingCommand> cmds) throws RemoteException {
+        // Commands up to the sequence number already received are not drawn
+        // again; the server may send them again after a reconnect. A batch
+        // may be empty, carrying only the sequence number the client's own
+        // commands reached.
+        int skip = (int) Math.max(0,
+                Math.min(cmds.size(), fSequence - (sequence - cmds.size())));
+        fSequence = Math.max(fSequence, sequence);
+        if (skip == cmds.size()) {
+            return;
+        }
+        fInbox.addAll(cmds.subList(skip, cmds.size()));
+        scheduleDrain();
+    }
+
+    @Override
+    public void receiveSnapshotFromServer(
+            DrawingSnapshot snapshot) throws RemoteException {
+        List<DrawingCommand> cmds;
+        BufferedImage checkpointImage;
+        try {
+            cmds = snapshot.commands();
+            checkpointImage = snapshot.checkpointImage();
+        } catch (IOException e) {
+            throw new RemoteException("Unable to read drawing snapshot", e);
+        } catch (ClassNotFoundException e) {
+            throw new RemoteException("Unable to read drawing snapshot", e);
+        }
+
+        synchronized (this) {
+            long sequence = snapshot.sequence();
+            int skip = 0;
+            if (sequence < fSequence) {
+                // The server has lost commands this client received, so its
+                // drawing replaces this client's.
+                fInbox.clear();
+                fClearPending = true;
+                fPendingCheckpointImage = checkpointImage;
+            } else {
+                skip = (int) Math.min(cmds.size(), Math.max(0, fSequence
+                        - (sequence - cmds.size())));
+                if (checkpointImage != null) {
+                    fPendingCheckpointImage = checkpointImage;
+                }
+            }
+            fSequence = sequence;
+            fInbox.addAll(cmds.subList(skip, cmds.size()));
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Returns the server the client is connected to.
+     */
+    public DrawingServer server() {
+        return fServer;
+    }
+
+    /**
+     * Looks the server up again after the connection to it has been lost, and
+     * registers with it, receiving the commands accepted since the last one
+     * received.
+     */
+    public void reconnect() throws RemoteException {
+        DrawingServer server;
+        try {
+            server = fDrawingApp.lookUpServer();
+        } catch (NotBoundException e) {
+            throw new RemoteException("Drawing server is not bound", e);
+        }
+        fServer = server;
+
+        long sequence;
+        synchronized (this) {
+            sequence = fSequence;
+        }
+        server.resumeDrawingClient(this, sequence);
+    }
+
+    @Override
+    public void receivePreviewsFromServer(List<DrawingPreview> previews)
+            throws RemoteException {
+        fPreviewInbox.addAll(previews);
+        scheduleDrain();
+    }
+
+    /**
+     * Asks the event dispatch thread to drain the inbox, unless it has
+     * already been asked and not yet done so.
+     */
+    private void scheduleDrain() {
+        if (fDrainScheduled.compareAndSet(false, true)) {
+            fDrainTimer.restart();
+        }
+    }
+
+    /**
+     * Applies everything in the inbox, on the event dispatch thread. Commands
+     * are committed before previews, so that a preview ended in the same
+     * frame as its command is committed never leaves a gap on screen.
+     */
+    private void drainInbox() {
+        // Anything that arrives from here on schedules another drain.
+        fDrainScheduled.set(false);
+
+        List<DrawingCommand> cmds = new ArrayList<DrawingCommand>();
+        boolean clear;
+        BufferedImage checkpointImage;
+        synchronized (this) {
+            clear = fClearPending;
+            checkpointImage = fPendingCheckpointImage;
+            fClearPending = false;
+            fPendingCheckpointImage = null;
+            DrawingCommand cmd;
+            while ((cmd = fInbox.poll()) != null) {
+                cmds.add(cmd);
+            }
+        }
+        if (clear) {
+            fDrawingSpace.clearDrawing();
+        }
+        if (checkpointImage != null) {
+            fDrawingSpace.setCheckpointImage(checkpointImage);
+        }
+        if (!cmds.isEmpty()) {
+            fDrawingSpace.commitDrawingCommands(cmds);
+            for (DrawingCommand received : cmds) {
+                fDrawingApp.addDrawingCommand(received);
+            }
+        }
+
+        List<DrawingPreview> previews = new ArrayList<DrawingPreview>();
+        DrawingPreview preview;
+        while ((preview = fPreviewInbox.poll()) != null) {
+            previews.add(preview);
+        }
+        if (!previews.isEmpty()) {
+            fDrawingSpace.updatePreviews(previews);
+        }
+    }
+
+    @Override
+    public void drawingCommandProgressed(DrawingCommand cmd) {
+        long now = System.currentTimeMillis();
+        if (fPreviewIntervalMillis == 0
+                || now - fLastPreviewMillis < fPreviewIntervalMillis) {
+            return;
+        }
+
+        // The preview is made here, on the thread executing the command, so
+        // that the broadcaster works on a copy that no longer changes.
+        DrawingPreview preview = null;
+        if (fPreviewMark >= 0 && cmd instanceof IncrementalDrawingCommand) {
+            IncrementalDrawingCommand incremental = (IncrementalDrawingCommand) cmd;
+            preview = DrawingPreview.progress(fName,
+                    incremental.progressSince(fPreviewMark), true);
+            fPreviewMark = incremental.progressMark();
+        } else {
+            try {
+                preview = DrawingPreview.progress(fName,
+                        (DrawingCommand) cmd.clone(), false);
+            } catch (CloneNotSupportedException e) {
+                e.printStackTrace();
+                return;
+            }
+            fPreviewMark = cmd instanceof IncrementalDrawingCommand ? ((IncrementalDrawingCommand) cmd)
+                    .progressMark() : -1;
+        }
+        fLastPreviewMillis = now;
+        fThreadPool.execute(new DrawingPreviewBroadcaster(fServer, fName,
+                preview));
+    }
+
+    @Override
+    public void drawingCommandExecuted(DrawingCommand cmd) {
+        fPreviewMark = -1;
+        fLastPreviewMillis = 0;
+
+        // Broadcast a copy, which the next execution of the command cannot
+        // change while it is being sent. Copying a finished Pen is cheap, as
+        // the copy shares its points.
+        DrawingCommand copy;
+        try {
+            copy = (DrawingCommand) cmd.clone();
+        } catch (CloneNotSupportedException e) {
+            e.printStackTrace();
+            return;
+        }
+        fBroadcaster.broadcast(copy);
+    }
+}
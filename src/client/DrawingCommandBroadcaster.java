@@ -1,37 +1,136 @@
-package client;
-
-import java.rmi.RemoteException;
-
-import service_interface.DrawingCommand;
-import service_interface.DrawingServer;
-
-/**
- * Send a completed drawing command to all of the drawing clients also
- * registered with the server.
- * 
- * @author Andrew
- * 
- */
-public class DrawingCommandBroadcaster implements Runnable {
-
-    DrawingServer fServer;
-    String fName;
-    DrawingCommand fCmd;
-
-    public DrawingCommandBroadcaster(DrawingServer server, String name,
-            DrawingCommand cmd) {
-        fServer = server;
-        fName = name;
-        fCmd = cmd;
-    }
-
-    @Override
-    public void run() {
-        try {
-            fServer.broadcastDrawingCommand(fName, fCmd);
-        } catch (RemoteException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-    }
-}
+package client;
+
+import java.rmi.RemoteException;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import service_interface.DrawingCommand;
+
+/**
+ * Send the completed drawing commands of a client to all of the drawing
+ * clients also registered with the server, in the order they were drawn.
+ * 
+ * Commands wait in an outbox, which is drained on the client's ordered
+ * executor. If a command cannot be sent, the client reconnects and the
+ * command is sent again, a few times with a growing delay. The delay is
+ * waited out on a timer rather than on the executor, so previews keep going
+ * meanwhile, and the commands drawn since wait in the outbox behind the one
+ * being retried. Each command carries an identifier, so that the server
+ * accepts it only once should an earlier attempt have reached it after all.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingCommandBroadcaster implements Runnable {
+
+    // Number of attempts to send a command before giving up.
+    public static final int MAX_ATTEMPTS = 5;
+
+    // Delay before the first retry, doubled before each further one.
+    public static final long RETRY_DELAY_MILLIS = 500;
+
+    // Waits out the delays before retries, for every client.
+    private static final Timer RETRY_TIMER = new Timer("broadcast-retry",
+            true);
+
+    /**
+     * A command waiting to be sent, with its identifier and the number of
+     * attempts made to send it.
+     */
+    static class Outgoing {
+        long fCommandId;
+        DrawingCommand fCmd;
+        int fAttempts;
+
+        Outgoing(long commandId, DrawingCommand cmd) {
+            fCommandId = commandId;
+            fCmd = cmd;
+        }
+    }
+
+    DrawingClientImpl fClient;
+    String fName;
+    Executor fExecutor;
+    Queue<Outgoing> fOutbox;
+
+    // Identifier of the last command put in the outbox.
+    long fLastCommandId;
+
+    // Whether a retry is waiting on the timer, which holds the outbox back.
+    private volatile boolean fRetryScheduled;
+
+    /**
+     * Creates a broadcaster for a client.
+     * 
+     * @param client
+     *            The client whose commands are sent, to the server it is
+     *            currently connected to.
+     * @param name
+     *            The client's name.
+     * @param executor
+     *            The client's executor, which runs one call to the server at
+     *            a time.
+     */
+    public DrawingCommandBroadcaster(DrawingClientImpl client, String name,
+            Executor executor) {
+        fClient = client;
+        fName = name;
+        fExecutor = executor;
+        fOutbox = new ConcurrentLinkedQueue<Outgoing>();
+    }
+
+    /**
+     * Queues a command to be sent after those queued before it.
+     */
+    synchronized public void broadcast(DrawingCommand cmd) {
+        fOutbox.add(new Outgoing(++fLastCommandId, cmd));
+        fExecutor.execute(this);
+    }
+
+    /**
+     * Sends the commands in the outbox, unless a retry is waiting. Runs on the
+     * client's executor.
+     */
+    @Override
+    public void run() {
+        Outgoing next;
+        while (!fRetryScheduled && (next = fOutbox.peek()) != null) {
+            try {
+                fClient.server().broadcastDrawingCommand(fName,
+                        next.fCommandId, next.fCmd);
+                fOutbox.poll();
+            } catch (RemoteException e) {
+                next.fAttempts++;
+                if (next.fAttempts == MAX_ATTEMPTS) {
+                    e.printStackTrace();
+                    fOutbox.poll();
+                    continue;
+                }
+                System.err.println("Unable to send drawing command, retrying: "
+                        + e.getMessage());
+                fRetryScheduled = true;
+                RETRY_TIMER.schedule(new TimerTask() {
+                    public void run() {
+                        retry();
+                    }
+                }, RETRY_DELAY_MILLIS << (next.fAttempts - 1));
+            }
+        }
+    }
+
+    /**
+     * Reconnects the client, then sends the outbox again. Runs on the timer.
+     */
+    private void retry() {
+        try {
+            fClient.reconnect();
+        } catch (RemoteException e) {
+            // Sending again fails in turn, and is retried.
+        }
+        fRetryScheduled = false;
+        fExecutor.execute(this);
+    }
+}
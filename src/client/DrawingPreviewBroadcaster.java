@@ -0,0 +1,36 @@
+package client;
+
+import java.rmi.RemoteException;
+
+import service_interface.DrawingPreview;
+import service_interface.DrawingServer;
+
+/**
+ * Send a preview of an executing drawing command to all of the drawing clients
+ * also registered with the server.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingPreviewBroadcaster implements Runnable {
+
+    DrawingServer fServer;
+    String fName;
+    DrawingPreview fPreview;
+
+    public DrawingPreviewBroadcaster(DrawingServer server, String name,
+            DrawingPreview preview) {
+        fServer = server;
+        fName = name;
+        fPreview = preview;
+    }
+
+    @Override
+    public void run() {
+        try {
+            fServer.broadcastDrawingPreview(fName, fPreview);
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,168 +1,565 @@
-package client;
-
-import java.awt.Color;
-import java.awt.Graphics;
-import java.util.ArrayList;
-import java.util.Hashtable;
-import java.util.List;
-import java.util.Map;
-
-import javax.swing.JPanel;
-
-import service_interface.DrawingCommand;
-import service_interface.DrawingCommandListener;
-
-/**
- * A DrawingSpace is essentially a canvas onto which DrawingCommand objects
- * paint. A DrawingSpace object is registered as a DrawingCommandListener onto
- * DrawingCommand objects; whenever a DrawingCommand draws it notifies the
- * DrawingSpace. A DrawingSpace object stores the effects of executing
- * DrawingCommands and renders these. The effect of executing a DrawingCommand
- * is represented by a clone of the executed DrawingCommand - see the API
- * description for DrawingCommand.
- * 
- * Entities that are interested in the changing state of a DrawingSpace object
- * should implement the DrawingSpaceListener interface. A DrawingSpaceListener
- * can be registered with a DrawingSpace instance and notified of updates. This
- * facility may be useful as the application is evolved, e.g. to to track
- * changes and update a remote server.
- * 
- * @author Ian Warren
- * 
- */
-public class DrawingSpace extends JPanel implements DrawingCommandListener {
-    private static Color BACKGROUND_COLOR = Color.WHITE;
-
-    // A map of executed drawing commands, indexed by sequence number.
-    private Map<Integer, DrawingCommand> fCommittedDrawingCommands;
-
-    private List<DrawingSpaceListener> fDrawingSpaceListeners;
-
-    // Currently selected drawing command.
-    private DrawingCommand fSelectedCommand;
-
-    /**
-     * Creates a DrawingSpace object.
-     */
-    public DrawingSpace() {
-        fCommittedDrawingCommands = new Hashtable<Integer, DrawingCommand>();
-        fDrawingSpaceListeners = new ArrayList<DrawingSpaceListener>();
-        fSelectedCommand = null;
-
-        setBackground(BACKGROUND_COLOR);
-    }
-
-    /**
-     * Sets the DrawingCommand to be used to draw on this DrawingSpace object.
-     * Setting the DrawingCommand involves registering it as a MouseListener and
-     * a MouseMotionListener so that the command will be notified of such
-     * events. The only DrawingCommand object that receives these events is the
-     * currently set command. In addition to registering the command as a
-     * listener for mouse events, the command is given the opportunity to change
-     * the screen cursor.
-     * 
-     * @param cmd
-     *            the DrawingCommand object to set.
-     * @throws IllegalArgumentException
-     *             if some other DrawingCommand is currently in progress. In
-     *             this case, this method has no effect.
-     */
-    public void setDrawingCommand(DrawingCommand cmd)
-            throws IllegalArgumentException {
-        if (fSelectedCommand != null && fSelectedCommand.isExecuting()) {
-            throw new IllegalArgumentException(
-                    "Unable to set new drawing command when another has not yet completed");
-        }
-
-        // Deregister the current drawing command so that it no longer
-        // processes mouse events.
-        if (fSelectedCommand != null) {
-            removeMouseListener(fSelectedCommand);
-            removeMouseMotionListener(fSelectedCommand);
-        }
-
-        // Remember the new drawing command.
-        fSelectedCommand = cmd;
-
-        // Change the cursor.
-        setCursor(cmd.cursor());
-
-        // Register the newly set drawing command so that it receives mouse
-        // events.
-        addMouseListener(fSelectedCommand);
-        addMouseMotionListener(fSelectedCommand);
-    }
-
-    /**
-     * Paints the effects of previously executed DrawingCommands, plus the
-     * effect of the currently selected command if it is in progress.
-     * 
-     */
-    public void paintComponent(Graphics g) {
-        super.paintComponent(g);
-
-        // Draw all DrawingCommands that have finished executing.
-        for (DrawingCommand cmd : fCommittedDrawingCommands.values()) {
-            cmd.draw(g);
-        }
-
-        // Finally, draw any command that is in progress.
-        if (fSelectedCommand != null && fSelectedCommand.isExecuting()) {
-            fSelectedCommand.draw(g);
-        }
-    }
-
-    /**
-     * Adds a DrawingSpaceListener to this DrawingSpace object.
-     */
-    public void addDrawingSpaceListener(DrawingSpaceListener listener) {
-        fDrawingSpaceListeners.add(listener);
-    }
-
-    /**
-     * Removes a DrawingSpaceListener from this DrawingSpace object.
-     */
-    public void removeDrawingSpaceListener(DrawingSpaceListener listener) {
-        fDrawingSpaceListeners.remove(listener);
-    }
-
-    /**
-     * Add a drawing command to the list of finished commands and repaint the
-     * drawing space.
-     * 
-     * @param cmd
-     */
-    synchronized public void commitDrawingCommand(DrawingCommand cmd) {
-        try {
-            // Clone the DrawingCommand and store the copy; this represents
-            // the effect of executing the command.
-            fCommittedDrawingCommands.put(fCommittedDrawingCommands.size(),
-                    (DrawingCommand) cmd.clone());
-        } catch (CloneNotSupportedException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-        repaint();
-    }
-
-    /**
-     * DrawingCommandListener method that is called when a DrawingCommand object
-     * has generated an event of interest to this DrawingSpace object.
-     */
-    public void update(DrawingCommandEvent event, DrawingCommand cmd) {
-        if (event == DrawingCommandEvent.DrawingStarted) {
-            // No action necessary.
-        } else if (event == DrawingCommandEvent.DrawingProgressed) {
-            // Render the progress made by the DrawingCommand.
-            repaint();
-        } else if (event == DrawingCommandEvent.DrawingCompleted) {
-            commitDrawingCommand(cmd);
-
-            // Notify listeners that a DrawingCommand has completed
-            // execution.
-            for (DrawingSpaceListener listener : fDrawingSpaceListeners) {
-                listener.drawingCommandExecuted(cmd);
-            }
-        }
-    }
-}
+package client;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import service_interface.BoundedDrawingCommand;
+import service_interface.DrawingCommand;
+import service_interface.DrawingCommandListener;
+import service_interface.DrawingPreview;
+
+/**
+ * A DrawingSpace is essentially a canvas onto which DrawingCommand objects
+ * paint. A DrawingSpace object is registered as a DrawingCommandListener onto
+ * DrawingCommand objects; whenever a DrawingCommand draws it notifies the
+ * DrawingSpace. A DrawingSpace object stores the effects of executing
+ * DrawingCommands and renders these. The effect of executing a DrawingCommand
+ * is represented by a clone of the executed DrawingCommand - see the API
+ * description for DrawingCommand.
+ * 
+ * Entities that are interested in the changing state of a DrawingSpace object
+ * should implement the DrawingSpaceListener interface. A DrawingSpaceListener
+ * can be registered with a DrawingSpace instance and notified of updates. This
+ * facility may be useful as the application is evolved, e.g. to to track
+ * changes and update a remote server.
+ * 
+ * Committed commands are drawn once, into tiles of the canvas kept by a
+ * TiledRenderer, as they are first painted. Repainting copies the tiles and
+ * draws only previews and the command in progress over them, so that the
+ * cost of a repaint while drawing does not grow with the number of commands
+ * drawn before. A spatial index of the committed commands finds those that
+ * touch a tile; a tile is drawn in full when it is first shown, and after
+ * that only new commands that touch it are drawn into it. All tiles are
+ * redrawn when the checkpoint image changes.
+ * 
+ * Where commands report their bounds, only the area a change affects is
+ * repainted: the area a newly committed command or preview draws on, or the
+ * area changed by each step of the command in progress.
+ * 
+ * A DrawingSpace is used only on the event dispatch thread. Commands drawn
+ * here are committed there as they complete, and commands from the server
+ * are committed there when DrawingClientImpl drains its inbox, a batch at a
+ * time; clearDrawing() swaps the store, index and renderer, which are not
+ * volatile, on that thread too. Committed commands are appended to a
+ * CommandStore, and everything derived from them, the tiles and spatial
+ * index, is brought up to date when painting.
+ * 
+ * The canvas is shown through a viewport that can be zoomed, with the mouse
+ * wheel, and panned, by dragging with the right mouse button. Mouse events
+ * are passed to the selected command in canvas coordinates, so commands draw
+ * on the canvas whatever the view. The tiles are tiles of the zoomed canvas,
+ * and are all redrawn when the zoom changes; zoomed out, commands that can
+ * draw with less detail do, so that a zoomed out view of a dense drawing
+ * costs about as much to draw as the screen area it covers.
+ * 
+ * @author Ian Warren
+ * 
+ */
+public class DrawingSpace extends JPanel implements DrawingCommandListener {
+    private static Color BACKGROUND_COLOR = Color.WHITE;
+
+    // Colour commands are drawn in. Set explicitly rather than left to the
+    // look and feel, as it must match the colour in which the server draws
+    // commands into checkpoint images.
+    private static Color FOREGROUND_COLOR = Color.BLACK;
+
+    // Limits of the zoom, in screen pixels to a pixel of the canvas, and the
+    // factor by which a notch of the mouse wheel zooms.
+    public static final double MIN_SCALE = 1.0 / 64;
+    public static final double MAX_SCALE = 16;
+    private static final double WHEEL_ZOOM = 1.25;
+
+    // Executed drawing commands, indexed by sequence number.
+    private CommandStore fCommittedDrawingCommands;
+
+    // Spatial index of the committed drawing commands, and the tiles they are
+    // rendered into. Used only when painting.
+    private CommandGrid fCommandGrid;
+    private TiledRenderer fRenderer;
+
+    private List<DrawingSpaceListener> fDrawingSpaceListeners;
+
+    // Raster image of commands executed before the committed commands, as
+    // received from the server, or null.
+    private volatile BufferedImage fCheckpointImage;
+
+    // Checkpoint image the tiles were rendered over. Used only when painting.
+    private BufferedImage fRenderedCheckpointImage;
+
+    // Previews of commands executing on other clients, indexed by the name of
+    // the client executing them.
+    private Map<String, List<DrawingCommand>> fPreviews;
+
+    // Currently selected drawing command.
+    private DrawingCommand fSelectedCommand;
+
+    // Viewport: the scale of the view, in screen pixels to a pixel of the
+    // canvas, and the position of its top left corner on the scaled canvas.
+    // Changed on the event dispatch thread.
+    private volatile double fScale;
+    private volatile int fPanX;
+    private volatile int fPanY;
+
+    // Scale the tiles were rendered at. Used only when painting.
+    private double fRenderedScale;
+
+    // Last point of a pan in progress, or null.
+    private Point fPanPoint;
+
+    /**
+     * Creates a DrawingSpace object.
+     */
+    public DrawingSpace() {
+        fCommittedDrawingCommands = new CommandStore();
+        fCommandGrid = new CommandGrid();
+        fRenderer = new TiledRenderer(fCommittedDrawingCommands, fCommandGrid);
+        fDrawingSpaceListeners = new ArrayList<DrawingSpaceListener>();
+        fPreviews = new HashMap<String, List<DrawingCommand>>();
+        fSelectedCommand = null;
+        fScale = 1;
+        fRenderedScale = 1;
+
+        setBackground(BACKGROUND_COLOR);
+        setForeground(FOREGROUND_COLOR);
+
+        ViewportMouseListener listener = new ViewportMouseListener();
+        addMouseListener(listener);
+        addMouseMotionListener(listener);
+        addMouseWheelListener(listener);
+    }
+
+    /**
+     * Sets the DrawingCommand to be used to draw on this DrawingSpace object.
+     * The command is passed mouse events, other than those that pan the view,
+     * in canvas coordinates. The only DrawingCommand object that receives
+     * these events is the currently set command. In addition to registering the command as a
+     * listener for mouse events, the command is given the opportunity to change
+     * the screen cursor.
+     * 
+     * @param cmd
+     *            the DrawingCommand object to set.
+     * @throws IllegalArgumentException
+     *             if some other DrawingCommand is currently in progress. In
+     *             this case, this method has no effect.
+     */
+    public void setDrawingCommand(DrawingCommand cmd)
+            throws IllegalArgumentException {
+        if (fSelectedCommand != null && fSelectedCommand.isExecuting()) {
+            throw new IllegalArgumentException(
+                    "Unable to set new drawing command when another has not yet completed");
+        }
+
+        // Remember the new drawing command, which from now on is passed the
+        // mouse events.
+        fSelectedCommand = cmd;
+
+        // Change the cursor.
+        setCursor(cmd.cursor());
+    }
+
+    /**
+     * Returns the scale of the view, in screen pixels to a pixel of the
+     * canvas.
+     */
+    public double scale() {
+        return fScale;
+    }
+
+    /**
+     * Zooms the view by a factor, within the limits of the zoom, keeping the
+     * point of the canvas under a point of the drawing space where it is.
+     * 
+     * @param factor
+     *            the factor by which to multiply the scale.
+     * @param about
+     *            the point that stays put, in drawing space coordinates.
+     */
+    public void zoom(double factor, Point about) {
+        double scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, fScale
+                * factor));
+        double x = (about.x + fPanX) / fScale;
+        double y = (about.y + fPanY) / fScale;
+        fPanX = (int) Math.round(x * scale) - about.x;
+        fPanY = (int) Math.round(y * scale) - about.y;
+        fScale = scale;
+        repaint();
+    }
+
+    /**
+     * Moves the view so that the canvas moves by a distance on screen.
+     */
+    public void pan(int dx, int dy) {
+        fPanX -= dx;
+        fPanY -= dy;
+        repaint();
+    }
+
+    /**
+     * Shows the canvas at its own size, with its origin at the top left.
+     */
+    public void resetView() {
+        fScale = 1;
+        fPanX = 0;
+        fPanY = 0;
+        repaint();
+    }
+
+    /**
+     * Paints the effects of previously executed DrawingCommands, then previews
+     * of commands in progress on other clients, plus the effect of the
+     * currently selected command if it is in progress.
+     * 
+     */
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        double scale = fScale;
+        int panX = fPanX;
+        int panY = fPanY;
+        Graphics2D view = (Graphics2D) g.create();
+        try {
+            // Draw the checkpoint and all DrawingCommands that have finished
+            // executing, from the tiles that show the area being painted.
+            Rectangle area = new Rectangle(0, 0, getWidth(), getHeight());
+            Rectangle clip = g.getClipBounds();
+            if (clip != null) {
+                area = area.intersection(clip);
+            }
+            area.translate(panX, panY);
+            view.translate(-panX, -panY);
+            fRenderer.paint(view, area, updateRenderer(scale));
+
+            // Draw what other clients have drawn so far.
+            synchronized (this) {
+                for (List<DrawingCommand> fragments : fPreviews.values()) {
+                    for (DrawingCommand fragment : fragments) {
+                        TiledRenderer.draw(view, fragment, scale);
+                    }
+                }
+            }
+
+            // Finally, draw any command that is in progress.
+            if (fSelectedCommand != null && fSelectedCommand.isExecuting()) {
+                TiledRenderer.draw(view, fSelectedCommand, scale);
+            }
+        } finally {
+            view.dispose();
+        }
+    }
+
+    /**
+     * Adds a DrawingSpaceListener to this DrawingSpace object.
+     */
+    public void addDrawingSpaceListener(DrawingSpaceListener listener) {
+        fDrawingSpaceListeners.add(listener);
+    }
+
+    /**
+     * Removes a DrawingSpaceListener from this DrawingSpace object.
+     */
+    public void removeDrawingSpaceListener(DrawingSpaceListener listener) {
+        fDrawingSpaceListeners.remove(listener);
+    }
+
+    /**
+     * Sets the image of previously executed DrawingCommands that is drawn
+     * beneath the committed commands, and repaints the drawing space.
+     * 
+     * @param image
+     */
+    public void setCheckpointImage(BufferedImage image) {
+        fCheckpointImage = image;
+        repaint();
+    }
+
+    /**
+     * Discards the checkpoint image and every committed command, as when the
+     * server's drawing replaces this one, and repaints the drawing space. Must
+     * be called on the event dispatch thread, which is where commands are
+     * committed and painted.
+     */
+    public void clearDrawing() {
+        fCommittedDrawingCommands = new CommandStore();
+        fCommandGrid = new CommandGrid();
+        fRenderer = new TiledRenderer(fCommittedDrawingCommands, fCommandGrid);
+        fCheckpointImage = null;
+        repaint();
+    }
+
+    /**
+     * Add a drawing command to the list of finished commands and repaint the
+     * drawing space. Must be called on the event dispatch thread.
+     * 
+     * @param cmd
+     */
+    public void commitDrawingCommand(DrawingCommand cmd) {
+        try {
+            // Clone the DrawingCommand and store the copy; this represents
+            // the effect of executing the command.
+            fCommittedDrawingCommands.append((DrawingCommand) cmd.clone());
+        } catch (CloneNotSupportedException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+        repaintArea(add(nothing(), cmd));
+    }
+
+    /**
+     * Add a list of drawing commands to the finished commands, in order, and
+     * repaint the drawing space once. Must be called on the event dispatch
+     * thread.
+     * 
+     * @param cmds
+     */
+    public void commitDrawingCommands(List<DrawingCommand> cmds) {
+        Rectangle changed = nothing();
+        List<DrawingCommand> copies = new ArrayList<DrawingCommand>(cmds.size());
+        for (DrawingCommand cmd : cmds) {
+            changed = add(changed, cmd);
+            try {
+                copies.add((DrawingCommand) cmd.clone());
+            } catch (CloneNotSupportedException e) {
+                e.printStackTrace();
+            }
+        }
+        fCommittedDrawingCommands.appendAll(copies);
+        repaintArea(changed);
+    }
+
+    /**
+     * Implementation method to index the commands committed since it was last
+     * called, and discard all tiles if the checkpoint image or the scale has
+     * changed, when painting. Returns the number of committed commands to
+     * paint.
+     */
+    private int updateRenderer(double scale) {
+        int count = fCommittedDrawingCommands.size();
+        for (int i = fCommandGrid.size(); i < count; i++) {
+            fCommandGrid.add(fCommittedDrawingCommands.get(i));
+        }
+
+        BufferedImage checkpoint = fCheckpointImage;
+        if (checkpoint != fRenderedCheckpointImage || scale != fRenderedScale
+                || fRenderer.tileCount() == 0) {
+            fRenderedCheckpointImage = checkpoint;
+            fRenderedScale = scale;
+            fRenderer.reset(checkpoint, getBackground(), getForeground(),
+                    scale);
+        }
+        return count;
+    }
+
+    /**
+     * Applies previews of commands in progress on other clients and repaints
+     * the drawing space once. A preview that ends a client's command discards
+     * its preview; the finished command is committed separately.
+     * 
+     * @param previews
+     */
+    synchronized public void updatePreviews(List<DrawingPreview> previews) {
+        Rectangle changed = nothing();
+        for (DrawingPreview preview : previews) {
+            List<DrawingCommand> fragments = fPreviews.get(preview.sender());
+            if (preview.extendsPrevious() && fragments != null
+                    && !preview.isEnded()) {
+                fragments.addAll(preview.fragments());
+            } else {
+                // The previous preview, if any, is erased.
+                if (fragments != null) {
+                    for (DrawingCommand fragment : fragments) {
+                        changed = add(changed, fragment);
+                    }
+                }
+                if (preview.isEnded()) {
+                    fPreviews.remove(preview.sender());
+                } else {
+                    fPreviews.put(preview.sender(),
+                            new ArrayList<DrawingCommand>(preview.fragments()));
+                }
+            }
+            if (!preview.isEnded()) {
+                for (DrawingCommand fragment : preview.fragments()) {
+                    changed = add(changed, fragment);
+                }
+            }
+        }
+        repaintArea(changed);
+    }
+
+    /**
+     * Implementation method to repaint the part of the drawing space that
+     * shows an area of the canvas, or all of it if the area is null.
+     */
+    private void repaintArea(Rectangle area) {
+        if (area == null) {
+            repaint();
+        } else if (!area.isEmpty()) {
+            double scale = fScale;
+            if (scale == 1) {
+                area.translate(-fPanX, -fPanY);
+                repaint(area);
+            } else {
+                // Widened by a pixel for rounding.
+                int left = (int) Math.floor(area.x * scale) - fPanX - 1;
+                int top = (int) Math.floor(area.y * scale) - fPanY - 1;
+                int right = (int) Math.ceil((area.x + area.width) * scale)
+                        - fPanX + 1;
+                int bottom = (int) Math.ceil((area.y + area.height) * scale)
+                        - fPanY + 1;
+                repaint(left, top, right - left, bottom - top);
+            }
+        }
+    }
+
+    /**
+     * Implementation method returning a mouse event with its point moved from
+     * the drawing space to the canvas it shows.
+     */
+    private MouseEvent toCanvas(MouseEvent event) {
+        double scale = fScale;
+        if (scale == 1 && fPanX == 0 && fPanY == 0) {
+            return event;
+        }
+        int x = (int) Math.floor((event.getX() + fPanX) / scale);
+        int y = (int) Math.floor((event.getY() + fPanY) / scale);
+        return new MouseEvent(this, event.getID(), event.getWhen(), event
+                .getModifiersEx(), x, y, event.getClickCount(), event
+                .isPopupTrigger(), event.getButton());
+    }
+
+    /**
+     * Implementation method returning a rectangle that encloses nothing, to
+     * which the bounds of commands can be added.
+     */
+    private static Rectangle nothing() {
+        return new Rectangle(0, 0, -1, -1);
+    }
+
+    /**
+     * Implementation method to extend an area to enclose what a command
+     * draws. The area becomes null, standing for the whole drawing space, if
+     * the command's bounds are not known.
+     */
+    private static Rectangle add(Rectangle area, DrawingCommand cmd) {
+        if (area == null || !(cmd instanceof BoundedDrawingCommand)) {
+            return null;
+        }
+        area.add(((BoundedDrawingCommand) cmd).bounds());
+        return area;
+    }
+
+    /**
+     * DrawingCommandListener method that is called when a DrawingCommand object
+     * has generated an event of interest to this DrawingSpace object.
+     */
+    public void update(DrawingCommandEvent event, DrawingCommand cmd) {
+        if (event == DrawingCommandEvent.DrawingStarted) {
+            // No action necessary.
+        } else if (event == DrawingCommandEvent.DrawingProgressed) {
+            // Render the progress made by the DrawingCommand, repainting
+            // only the area it changed if that is known.
+            if (cmd instanceof BoundedDrawingCommand) {
+                repaintArea(((BoundedDrawingCommand) cmd).changedBounds());
+            } else {
+                repaint();
+            }
+
+            for (DrawingSpaceListener listener : fDrawingSpaceListeners) {
+                listener.drawingCommandProgressed(cmd);
+            }
+        } else if (event == DrawingCommandEvent.DrawingCompleted) {
+            commitDrawingCommand(cmd);
+
+            // Completing may change a command beyond its bounds, e.g. when a
+            // Pen stroke is simplified, so repaint everything once.
+            repaint();
+
+            // Notify listeners that a DrawingCommand has completed
+            // execution.
+            for (DrawingSpaceListener listener : fDrawingSpaceListeners) {
+                listener.drawingCommandExecuted(cmd);
+            }
+        }
+    }
+
+    /**
+     * Listens to the mouse on behalf of the drawing space: zooms and pans the
+     * view, and passes all other mouse events to the selected command, in
+     * canvas coordinates.
+     */
+    private class ViewportMouseListener extends MouseAdapter {
+
+        public void mousePressed(MouseEvent event) {
+            if (SwingUtilities.isRightMouseButton(event)
+                    && (fSelectedCommand == null || !fSelectedCommand
+                            .isExecuting())) {
+                fPanPoint = event.getPoint();
+            } else if (fPanPoint == null && fSelectedCommand != null) {
+                fSelectedCommand.mousePressed(toCanvas(event));
+            }
+        }
+
+        public void mouseReleased(MouseEvent event) {
+            if (fPanPoint != null) {
+                if (SwingUtilities.isRightMouseButton(event)) {
+                    fPanPoint = null;
+                }
+            } else if (fSelectedCommand != null) {
+                fSelectedCommand.mouseReleased(toCanvas(event));
+            }
+        }
+
+        public void mouseDragged(MouseEvent event) {
+            if (fPanPoint != null) {
+                pan(event.getX() - fPanPoint.x, event.getY() - fPanPoint.y);
+                fPanPoint = event.getPoint();
+            } else if (fSelectedCommand != null) {
+                fSelectedCommand.mouseDragged(toCanvas(event));
+            }
+        }
+
+        public void mouseClicked(MouseEvent event) {
+            if (fPanPoint == null && fSelectedCommand != null
+                    && !SwingUtilities.isRightMouseButton(event)) {
+                fSelectedCommand.mouseClicked(toCanvas(event));
+            }
+        }
+
+        public void mouseMoved(MouseEvent event) {
+            if (fSelectedCommand != null) {
+                fSelectedCommand.mouseMoved(toCanvas(event));
+            }
+        }
+
+        public void mouseEntered(MouseEvent event) {
+            if (fSelectedCommand != null) {
+                fSelectedCommand.mouseEntered(toCanvas(event));
+            }
+        }
+
+        public void mouseExited(MouseEvent event) {
+            if (fSelectedCommand != null) {
+                fSelectedCommand.mouseExited(toCanvas(event));
+            }
+        }
+
+        public void mouseWheelMoved(MouseWheelEvent event) {
+            zoom(Math.pow(WHEEL_ZOOM, -event.getPreciseWheelRotation()), event
+                    .getPoint());
+        }
+    }
+}
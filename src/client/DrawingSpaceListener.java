@@ -1,19 +1,25 @@
-package client;
-
-import service_interface.DrawingCommand;
-
-/**
- * Listener interface intended to be implemented by classes whose instances are
- * interested in the changing state of a DrawingSpace object. Specifically, a
- * registered DrawingSpaceListener is notified whenever a DrawingCommand
- * completes execution.
- * 
- * @author Ian Warren
- * 
- */
-public interface DrawingSpaceListener {
-    /**
-     * Called when a specified DrawingCommand has completed executing.
-     */
-    void drawingCommandExecuted(DrawingCommand command);
-}
+package client;
+
+import service_interface.DrawingCommand;
+
+/**
+ * Listener interface intended to be implemented by classes whose instances are
+ * interested in the changing state of a DrawingSpace object. Specifically, a
+ * registered DrawingSpaceListener is notified whenever a DrawingCommand
+ * makes progress and when it completes execution.
+ * 
+ * @author Ian Warren
+ * 
+ */
+public interface DrawingSpaceListener {
+    /**
+     * Called when a specified DrawingCommand has made progress but not yet
+     * completed executing.
+     */
+    void drawingCommandProgressed(DrawingCommand command);
+
+    /**
+     * Called when a specified DrawingCommand has completed executing.
+     */
+    void drawingCommandExecuted(DrawingCommand command);
+}
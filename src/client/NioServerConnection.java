@@ -0,0 +1,241 @@
+package client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.List;
+
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPreview;
+import service_interface.DrawingServer;
+import service_interface.DrawingSnapshot;
+import service_interface.NioFrames;
+
+/**
+ * The client's end of an NIO transport connection to a drawing server. It
+ * stands in for the server's remote stub: DrawingServer calls are sent as
+ * frames over a single socket, and a reader thread turns the frames the
+ * server sends back into calls on the registered DrawingClient.
+ * 
+ * Frames from the server are limited to the size the server gives when the
+ * client registers, and to NioFrames.DEFAULT_MAX_FRAME_SIZE until then.
+ * 
+ * If the connection is lost, resuming the client's registration connects
+ * again. As frames carry no replies, the server's commandsSince() cannot be
+ * called over the transport; resuming has the server send the missed commands
+ * instead.
+ * 
+ * @author Andrew
+ * 
+ */
+public class NioServerConnection implements DrawingServer, Runnable {
+
+    private String fHost;
+    private int fPort;
+    private Socket fSocket;
+    private OutputStream fOut;
+    private DataInputStream fIn;
+    private String fRoom;
+    private DrawingClient fClient;
+    private volatile int fMaxFrameSize;
+    private volatile boolean fClosed;
+
+    /**
+     * Connects to a drawing server's NIO transport.
+     * 
+     * @param room
+     *            The room to join, or null for the server's default room.
+     * @throws IOException
+     *             if the server cannot be reached.
+     */
+    public NioServerConnection(String host, int port, String room)
+            throws IOException {
+        fHost = host;
+        fPort = port;
+        fRoom = room;
+        fMaxFrameSize = NioFrames.DEFAULT_MAX_FRAME_SIZE;
+        connect();
+    }
+
+    @Override
+    public void addDrawingClient(DrawingClient client) throws RemoteException {
+        fClient = client;
+        send(NioFrames.REGISTER, client.getName(), fRoom);
+        startReader();
+    }
+
+    /**
+     * Registers the client again, first connecting again if the connection
+     * has been lost.
+     */
+    @Override
+    public void resumeDrawingClient(DrawingClient client, long sequence)
+            throws RemoteException {
+        fClient = client;
+        boolean reconnected = false;
+        synchronized (this) {
+            if (fClosed) {
+                try {
+                    connect();
+                } catch (IOException e) {
+                    throw new RemoteException("Unable to connect to server", e);
+                }
+                reconnected = true;
+            }
+        }
+        send(NioFrames.RESUME, client.getName(), fRoom, sequence);
+        if (reconnected) {
+            startReader();
+        }
+    }
+
+    @Override
+    public void removeDrawingClient(DrawingClient client)
+            throws RemoteException {
+        send(NioFrames.DEREGISTER);
+        close();
+    }
+
+    @Override
+    public void broadcastDrawingCommand(String sender, DrawingCommand cmd)
+            throws RemoteException {
+        send(NioFrames.BROADCAST_COMMAND, sender, cmd);
+    }
+
+    @Override
+    public void broadcastDrawingCommand(String sender, long commandId,
+            DrawingCommand cmd) throws RemoteException {
+        send(NioFrames.BROADCAST_IDENTIFIED_COMMAND, sender, commandId, cmd);
+    }
+
+    @Override
+    public void broadcastDrawingPreview(String sender, DrawingPreview preview)
+            throws RemoteException {
+        send(NioFrames.BROADCAST_PREVIEW, sender, preview);
+    }
+
+    @Override
+    public DrawingSnapshot commandsSince(long sequence) throws RemoteException {
+        throw new RemoteException(
+                "The NIO transport cannot return commands; resume instead");
+    }
+
+    /**
+     * Reads frames from the server until the connection closes, passing each
+     * to the client.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void run() {
+        Socket socket;
+        DataInputStream input;
+        synchronized (this) {
+            socket = fSocket;
+            input = fIn;
+        }
+        try {
+            while (!fClosed) {
+                NioFrames.Frame frame = NioFrames.read(input, fMaxFrameSize);
+                ObjectInputStream in = frame.fields();
+                switch (frame.type()) {
+                case NioFrames.FRAME_LIMIT:
+                    fMaxFrameSize = (Integer) in.readObject();
+                    break;
+                case NioFrames.COMMAND:
+                    fClient.receiveDrawingCommandFromServer((DrawingCommand) in
+                            .readObject());
+                    break;
+                case NioFrames.COMMANDS:
+                    fClient.receiveDrawingCommandsFromServer((List<DrawingCommand>) in
+                            .readObject());
+                    break;
+                case NioFrames.SEQUENCED_COMMANDS:
+                    fClient.receiveSequencedCommandsFromServer((Long) in
+                            .readObject(), (List<DrawingCommand>) in
+                            .readObject());
+                    break;
+                case NioFrames.SNAPSHOT:
+                    fClient.receiveSnapshotFromServer((DrawingSnapshot) in
+                            .readObject());
+                    break;
+                case NioFrames.PREVIEWS:
+                    fClient.receivePreviewsFromServer((List<DrawingPreview>) in
+                            .readObject());
+                    break;
+                default:
+                    throw new IOException("Unknown message type "
+                            + frame.type());
+                }
+            }
+        } catch (IOException e) {
+            if (!fClosed) {
+                e.printStackTrace();
+            }
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+
+        // The connection may already have been replaced.
+        synchronized (this) {
+            if (socket == fSocket) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Closes the connection.
+     */
+    public synchronized void close() {
+        fClosed = true;
+        try {
+            fSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Implementation method to open a connection to the server.
+     */
+    private synchronized void connect() throws IOException {
+        fSocket = new Socket(fHost, fPort);
+        fSocket.setTcpNoDelay(true);
+        fOut = new BufferedOutputStream(fSocket.getOutputStream());
+        fIn = new DataInputStream(new BufferedInputStream(fSocket
+                .getInputStream()));
+        fClosed = false;
+    }
+
+    /**
+     * Implementation method to start a thread reading from the connection.
+     */
+    private void startReader() {
+        Thread reader = new Thread(this, "nio-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Implementation method to send a frame. A connection that cannot be
+     * written to is closed, so that the client can resume over a new one.
+     */
+    private synchronized void send(byte type, Object... fields)
+            throws RemoteException {
+        try {
+            ByteBuffer frame = NioFrames.encode(type, fields);
+            fOut.write(frame.array(), frame.arrayOffset(), frame.remaining());
+            fOut.flush();
+        } catch (IOException e) {
+            close();
+            throw new RemoteException("Unable to send to server", e);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package client;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import service_interface.DetailedDrawingCommand;
+import service_interface.DrawingCommand;
+
+/**
+ * Renders committed drawing commands as a grid of fixed size tiles, each an
+ * image of its part of the canvas that is kept between paints. Painting an
+ * area brings the tiles it covers up to date and copies them to the screen.
+ * A tile is drawn in full the first time it is needed, and afterwards only
+ * commands committed since it was last brought up to date, and found by the
+ * spatial index to overlap it, are drawn into it; tiles that no new command
+ * overlaps cost nothing. Tiles that need drawing are drawn in parallel, each
+ * into its own image, on a fork/join pool with a thread per processor, while
+ * the painting thread waits.
+ * 
+ * The canvas may be rendered at a scale. Tiles are then tiles of the scaled
+ * canvas, so that the number of tiles painted depends on the size of the
+ * screen rather than of the canvas, and commands that can leave out detail
+ * too small to see at the scale do so.
+ * 
+ * Only so many tiles are kept. Once there are more, the tiles least recently
+ * painted, which lie outside the area on screen, are discarded, and drawn
+ * again in full should they be painted later.
+ * 
+ * A renderer is used only by the painting thread.
+ * 
+ * @author Andrew
+ * 
+ */
+public class TiledRenderer {
+
+    // Width and height of a tile, in pixels.
+    public static final int TILE_SIZE = 256;
+
+    // Fewest tiles kept, about 48 MB of images, and the number of times the
+    // largest area painted so far that are kept if that is more.
+    public static final int MIN_TILES = 192;
+    public static final int SCREENS_OF_TILES = 3;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime
+            .getRuntime().availableProcessors());
+
+    private CommandStore fCommands;
+    private CommandGrid fGrid;
+
+    // Tiles drawn so far, indexed by their coordinates packed into a long,
+    // the least recently painted first.
+    private Map<Long, Tile> fTiles;
+    private int fMaxTiles;
+
+    // What lies beneath the commands.
+    private BufferedImage fCheckpointImage;
+    private Color fBackground;
+    private Color fForeground;
+
+    // Number of pixels of a tile to a pixel of the canvas.
+    private double fScale;
+
+    /**
+     * Creates a renderer of commands, which must all be indexed by a grid
+     * before they are rendered.
+     */
+    public TiledRenderer(CommandStore commands, CommandGrid grid) {
+        fCommands = commands;
+        fGrid = grid;
+        fMaxTiles = MIN_TILES;
+        fTiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+                return size() > fMaxTiles;
+            }
+        };
+        fBackground = Color.WHITE;
+        fForeground = Color.BLACK;
+        fScale = 1;
+    }
+
+    /**
+     * Discards all tiles, and sets what the commands are drawn over, the
+     * colour in which they are drawn and the scale at which they are drawn.
+     * 
+     * @param checkpointImage
+     *            image drawn beneath the commands, or null.
+     * @param scale
+     *            the number of screen pixels to a pixel of the canvas.
+     */
+    public void reset(BufferedImage checkpointImage, Color background,
+            Color foreground, double scale) {
+        fTiles.clear();
+        fCheckpointImage = checkpointImage;
+        fBackground = background;
+        fForeground = foreground;
+        fScale = scale;
+    }
+
+    /**
+     * Brings the tiles covering an area up to date with the first commands,
+     * then draws them.
+     * 
+     * @param g
+     *            the graphics to draw on.
+     * @param area
+     *            the area to draw, in coordinates of the scaled canvas.
+     * @param count
+     *            the number of commands to render.
+     */
+    public void paint(Graphics g, Rectangle area, int count) {
+        if (area.isEmpty()) {
+            return;
+        }
+        int firstX = Math.floorDiv(area.x, TILE_SIZE);
+        int lastX = Math.floorDiv(area.x + area.width - 1, TILE_SIZE);
+        int firstY = Math.floorDiv(area.y, TILE_SIZE);
+        int lastY = Math.floorDiv(area.y + area.height - 1, TILE_SIZE);
+        fMaxTiles = Math.max(fMaxTiles, SCREENS_OF_TILES * (lastX - firstX + 1)
+                * (lastY - firstY + 1));
+
+        List<Tile> tiles = new ArrayList<Tile>();
+        List<Tile> stale = new ArrayList<Tile>();
+        for (int x = firstX; x <= lastX; x++) {
+            for (int y = firstY; y <= lastY; y++) {
+                Long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+                Tile tile = fTiles.get(key);
+                if (tile == null) {
+                    tile = new Tile(x * TILE_SIZE, y * TILE_SIZE);
+                    fTiles.put(key, tile);
+                }
+                tiles.add(tile);
+                if (tile.fDrawnCount < count) {
+                    stale.add(tile);
+                }
+            }
+        }
+
+        update(stale, count);
+        for (Tile tile : tiles) {
+            g.drawImage(tile.fImage, tile.fX, tile.fY, null);
+        }
+    }
+
+    /**
+     * Returns the number of tiles held.
+     */
+    public int tileCount() {
+        return fTiles.size();
+    }
+
+    /**
+     * Draws a command at a scale, on graphics in coordinates of the scaled
+     * canvas. A command that can draw itself scaled down, leaving out detail
+     * too small to see, does so; others are drawn through a scaling
+     * transform.
+     */
+    static void draw(Graphics2D g, DrawingCommand cmd, double scale) {
+        if (scale == 1) {
+            cmd.draw(g);
+        } else if (scale < 1 && cmd instanceof DetailedDrawingCommand) {
+            ((DetailedDrawingCommand) cmd).draw(g, scale);
+        } else {
+            AffineTransform transform = g.getTransform();
+            g.scale(scale, scale);
+            cmd.draw(g);
+            g.setTransform(transform);
+        }
+    }
+
+    /**
+     * Implementation method to bring tiles up to date, in parallel if there
+     * is more than one.
+     */
+    private void update(List<Tile> stale, final int count) {
+        if (stale.size() == 1) {
+            stale.get(0).update(count);
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Tile tile : stale) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    tile.update(count);
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> done : POOL.invokeAll(tasks)) {
+            try {
+                done.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * One tile: an image of a square of the canvas and the number of commands
+     * that have been drawn into it.
+     */
+    private class Tile {
+        int fX;
+        int fY;
+        BufferedImage fImage;
+        int fDrawnCount;
+
+        Tile(int x, int y) {
+            fX = x;
+            fY = y;
+            fDrawnCount = -1;
+        }
+
+        /**
+         * Draws into the tile the first commands it does not yet show,
+         * drawing the whole tile if it has not been drawn before.
+         */
+        void update(int count) {
+            // The part of the canvas the tile shows, widened by a pixel for
+            // commands that round onto it.
+            int left = (int) Math.floor(fX / fScale) - 1;
+            int top = (int) Math.floor(fY / fScale) - 1;
+            int right = (int) Math.ceil((fX + TILE_SIZE) / fScale) + 1;
+            int bottom = (int) Math.ceil((fY + TILE_SIZE) / fScale) + 1;
+            Rectangle region = new Rectangle(left, top, right - left, bottom
+                    - top);
+            boolean fresh = fImage == null;
+            if (fresh) {
+                fImage = new BufferedImage(TILE_SIZE, TILE_SIZE,
+                        BufferedImage.TYPE_INT_RGB);
+                fDrawnCount = 0;
+            }
+            Graphics2D g = fImage.createGraphics();
+            try {
+                g.translate(-fX, -fY);
+                if (fresh) {
+                    g.setColor(fBackground);
+                    g.fillRect(fX, fY, TILE_SIZE, TILE_SIZE);
+                    if (fCheckpointImage != null) {
+                        AffineTransform transform = g.getTransform();
+                        g.scale(fScale, fScale);
+                        g.drawImage(fCheckpointImage, 0, 0, null);
+                        g.setTransform(transform);
+                    }
+                }
+                g.setColor(fForeground);
+                for (int sequence : fGrid.query(region, fDrawnCount, count)) {
+                    draw(g, fCommands.get(sequence), fScale);
+                }
+            } finally {
+                g.dispose();
+            }
+            fDrawnCount = count;
+        }
+    }
+}
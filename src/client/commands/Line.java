@@ -1,134 +1,194 @@
-package client.commands;
-
-import java.awt.Color;
-import java.awt.Cursor;
-import java.awt.Graphics;
-import java.awt.event.MouseEvent;
-
-import service_interface.DrawingCommandListener.DrawingCommandEvent;
-
-/**
- * Implementation of the DrawingCommand interface that allows the user to draw a
- * point-to-point straight line.
- * 
- * @author Ian Warren
- * 
- */
-public class Line extends AbstractDrawingCommand {
-    // Attribute used to track whether or not the Line command has started
-    // but not yet finished executing.
-    private boolean fIsExecuting;
-
-    // Attributes to record the line's state.
-    private int fStartX;
-    private int fStartY;
-    private int fEndX;
-    private int fEndY;
-
-    // Attributes storing previous end-point of a line, used when dragging the
-    // mouse.
-    private int fFormerEndX;
-    private int fFormerEndY;
-
-    /**
-     * Creates a Line DrawingCommand instance.
-     */
-    public Line() {
-        fIsExecuting = false;
-    }
-
-    /**
-     * Returns the "crosshair" cursor.
-     */
-    public Cursor cursor() {
-        return new Cursor(Cursor.CROSSHAIR_CURSOR);
-    }
-
-    /**
-     * Processes a mouse-pressed event. This causes the Line command to start
-     * executing.
-     */
-    public void mousePressed(MouseEvent event) {
-        fStartX = event.getX();
-        fStartY = event.getY();
-
-        // Notify any registered listeners that this command has started
-        // executing.
-        this.updateListeners(DrawingCommandEvent.DrawingStarted);
-        fIsExecuting = true;
-    }
-
-    /**
-     * Processes a mouse-released event. This causes the Line command to
-     * complete execution.
-     */
-    public void mouseReleased(MouseEvent event) {
-        fEndX = event.getX();
-        fEndY = event.getY();
-
-        // Notify any registered listeners that this command has stopped
-        // executing.
-        this.updateListeners(DrawingCommandEvent.DrawingCompleted);
-        fIsExecuting = false;
-    }
-
-    /**
-     * Processes a mouse-dragged event. This occurs between execution start and
-     * completion, when the user holds down the mouse button and drags the
-     * mouse.
-     */
-    public void mouseDragged(MouseEvent event) {
-        fFormerEndX = fEndX;
-        fFormerEndY = fEndY;
-
-        fEndX = event.getX();
-        fEndY = event.getY();
-
-        // Notify any registered listeners that this command has made progress.
-        this.updateListeners(DrawingCommandEvent.DrawingProgressed);
-    }
-
-    /**
-     * Paints the progress/effect of executing a Line command.
-     */
-    public void draw(Graphics g) {
-        if (isExecuting()) {
-            // Command has not yet completed, so paint its progress.
-            Color currentColor = g.getColor();
-            g.setColor(Color.WHITE);
-            g.drawLine(fStartX, fStartY, fFormerEndX, fFormerEndY);
-            g.setColor(currentColor);
-            g.drawLine(fStartX, fStartY, fEndX, fEndY);
-        } else {
-            // Command has completed, so paint the effect of its execution.
-            g.drawLine(fStartX, fStartY, fEndX, fEndY);
-        }
-    }
-
-    /**
-     * Returns true if the Line command has started but not finished execution,
-     * false otherwise.
-     */
-    public boolean isExecuting() {
-        return fIsExecuting;
-    }
-
-    /**
-     * Returns true if this Line object has identical state to the object
-     * supplied as argument, false otherwise.
-     */
-    public boolean equals(Object other) {
-        boolean result = false;
-
-        if (other != null && other instanceof Line) {
-            Line otherLine = (Line) other;
-            result = fStartX == otherLine.fStartX
-                    && fStartY == otherLine.fStartY && fEndX == otherLine.fEndX
-                    && fEndY == otherLine.fStartY
-                    && fFormerEndX == otherLine.fFormerEndX
-                    && fFormerEndY == otherLine.fFormerEndY
-                    && fIsExecuting == otherLine.fIsExecuting;
-        }
-        return result;
-    }
-}
+package client.commands;
+
+import java.awt.Cursor;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import service_interface.BoundedDrawingCommand;
+import service_interface.DrawingCommandListener.DrawingCommandEvent;
+
+/**
+ * Implementation of the DrawingCommand interface that allows the user to draw a
+ * point-to-point straight line.
+ * 
+ * A Line is serialised compactly: only its start point and its extent are
+ * written, each in a variable number of bytes. A deserialised Line is always a
+ * finished command.
+ * 
+ * @author Ian Warren
+ * 
+ */
+public class Line extends AbstractDrawingCommand implements
+        BoundedDrawingCommand, Externalizable {
+    // Version of the serialised form written by writeExternal().
+    private static final int FORMAT_VERSION = 1;
+
+    // Attribute used to track whether or not the Line command has started
+    // but not yet finished executing.
+    private boolean fIsExecuting;
+
+    // Attributes to record the line's state.
+    private int fStartX;
+    private int fStartY;
+    private int fEndX;
+    private int fEndY;
+
+    // Attributes storing previous end-point of a line, used when dragging the
+    // mouse to find the area to be repainted.
+    private int fFormerEndX;
+    private int fFormerEndY;
+
+    /**
+     * Creates a Line DrawingCommand instance.
+     */
+    public Line() {
+        fIsExecuting = false;
+    }
+
+    /**
+     * Returns the "crosshair" cursor.
+     */
+    public Cursor cursor() {
+        return new Cursor(Cursor.CROSSHAIR_CURSOR);
+    }
+
+    /**
+     * Processes a mouse-pressed event. This causes the Line command to start
+     * executing.
+     */
+    public void mousePressed(MouseEvent event) {
+        fStartX = event.getX();
+        fStartY = event.getY();
+        fEndX = fStartX;
+        fEndY = fStartY;
+        fFormerEndX = fStartX;
+        fFormerEndY = fStartY;
+
+        // Notify any registered listeners that this command has started
+        // executing.
+        this.updateListeners(DrawingCommandEvent.DrawingStarted);
+        fIsExecuting = true;
+    }
+
+    /**
+     * Processes a mouse-released event. This causes the Line command to
+     * complete execution.
+     */
+    public void mouseReleased(MouseEvent event) {
+        fEndX = event.getX();
+        fEndY = event.getY();
+
+        // Notify any registered listeners that this command has stopped
+        // executing.
+        this.updateListeners(DrawingCommandEvent.DrawingCompleted);
+        fIsExecuting = false;
+    }
+
+    /**
+     * Processes a mouse-dragged event. This occurs between execution start and
+     * completion, when the user holds down the mouse button and drags the
+     * mouse.
+     */
+    public void mouseDragged(MouseEvent event) {
+        fFormerEndX = fEndX;
+        fFormerEndY = fEndY;
+
+        fEndX = event.getX();
+        fEndY = event.getY();
+
+        // Notify any registered listeners that this command has made progress.
+        this.updateListeners(DrawingCommandEvent.DrawingProgressed);
+    }
+
+    /**
+     * Paints the progress/effect of executing a Line command. While the line
+     * is dragged, its previous position is not erased here; the drawing space
+     * repaints the changed bounds, which include it, from what lies beneath.
+     */
+    public void draw(Graphics g) {
+        g.drawLine(fStartX, fStartY, fEndX, fEndY);
+    }
+
+    /**
+     * Returns the bounds of the line between its end points. These are cheap
+     * enough to compute that they are not cached.
+     */
+    public Rectangle bounds() {
+        return new Rectangle(Math.min(fStartX, fEndX), Math.min(fStartY,
+                fEndY), Math.abs(fEndX - fStartX) + 1,
+                Math.abs(fEndY - fStartY) + 1);
+    }
+
+    /**
+     * Returns the bounds of the line at its previous and current positions.
+     */
+    public Rectangle changedBounds() {
+        Rectangle changed = bounds();
+        changed.add(new Rectangle(Math.min(fStartX, fFormerEndX), Math.min(
+                fStartY, fFormerEndY), Math.abs(fFormerEndX - fStartX) + 1,
+                Math.abs(fFormerEndY - fStartY) + 1));
+        return changed;
+    }
+
+    /**
+     * Returns true if the Line command has started but not finished execution,
+     * false otherwise.
+     */
+    public boolean isExecuting() {
+        return fIsExecuting;
+    }
+
+    /**
+     * Writes the Line's end points.
+     */
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeVarInt(out, fStartX);
+        writeVarInt(out, fStartY);
+        writeVarInt(out, fEndX - fStartX);
+        writeVarInt(out, fEndY - fStartY);
+    }
+
+    /**
+     * Reads end points written by writeExternal().
+     */
+    public void readExternal(ObjectInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new InvalidObjectException("Unknown Line format " + version);
+        }
+
+        fStartX = readVarInt(in);
+        fStartY = readVarInt(in);
+        fEndX = fStartX + readVarInt(in);
+        fEndY = fStartY + readVarInt(in);
+        fFormerEndX = fEndX;
+        fFormerEndY = fEndY;
+        fIsExecuting = false;
+    }
+
+    /**
+     * Returns true if this Line object has identical state to the object
+     * supplied as argument, false otherwise.
+     */
+    public boolean equals(Object other) {
+        boolean result = false;
+
+        if (other != null && other instanceof Line) {
+            Line otherLine = (Line) other;
+            result = fStartX == otherLine.fStartX
+                    && fStartY == otherLine.fStartY && fEndX == otherLine.fEndX
+                    && fEndY == otherLine.fStartY
+                    && fFormerEndX == otherLine.fFormerEndX
+                    && fFormerEndY == otherLine.fFormerEndY
+                    && fIsExecuting == otherLine.fIsExecuting;
+        }
+        return result;
+    }
+}
@@ -1,148 +1,574 @@
-package client.commands;
-
-import java.awt.Graphics;
-import java.awt.event.MouseEvent;
-import java.util.Arrays;
-
-import service_interface.DrawingCommandListener.DrawingCommandEvent;
-
-/**
- * Implementation of the DrawingCommand interface that allows the user to draw
- * freehand.
- * 
- * @author Ian Warren
- * 
- */
-public class Pen extends AbstractDrawingCommand {
-    // Constants associated with dynamic array data structure.
-    private static final int ARRAY_INITIAL_SIZE = 64;
-    private static final int ARRAY_INCREMENT_SIZE = 16;
-
-    // Attributes to record the pens's state.
-    private int[] fXPoints;
-    private int[] fYPoints;
-    int fIndex;
-
-    // Attribute used to track whether or not the Pen command has started
-    // but not yet finished executing.
-    private boolean fIsExecuting;
-
-    /**
-     * Creates a Pen DrawingCommand instance.
-     */
-    public Pen() {
-        fIsExecuting = false;
-        fXPoints = null;
-        fYPoints = null;
-        fIndex = 0;
-    }
-
-    /**
-     * Processes a mouse-pressed event. This causes the Pen command to start
-     * executing.
-     */
-    public void mousePressed(MouseEvent event) {
-        fXPoints = new int[ARRAY_INITIAL_SIZE];
-        fYPoints = new int[ARRAY_INITIAL_SIZE];
-        fIndex = 0;
-
-        storePoint(event);
-
-        // Notify any registered listeners that this command has started
-        // executing.
-        this.updateListeners(DrawingCommandEvent.DrawingStarted);
-        fIsExecuting = true;
-    }
-
-    /**
-     * Processes a mouse-released event. This causes the Pen command to complete
-     * execution.
-     */
-    public void mouseReleased(MouseEvent event) {
-        if (fIndex == fXPoints.length) {
-            grow();
-        }
-        storePoint(event);
-
-        // Notify any registered listeners that this command has stopped
-        // executing.
-        this.updateListeners(DrawingCommandEvent.DrawingCompleted);
-        fIsExecuting = false;
-    }
-
-    /**
-     * Processes a mouse-dragged event. This occurs between execution start and
-     * completion, when the user holds down the mouse button and drags the
-     * mouse.
-     */
-    public void mouseDragged(MouseEvent event) {
-        if (fIndex == fXPoints.length) {
-            grow();
-        }
-        storePoint(event);
-
-        // Notify any registered listeners that this command has made progress.
-        this.updateListeners(DrawingCommandEvent.DrawingProgressed);
-    }
-
-    /**
-     * Returns a deep copy of a Pen object.
-     */
-    public Object clone() throws CloneNotSupportedException {
-        Pen copy = (Pen) super.clone();
-        copy.fXPoints = Arrays.copyOf(fXPoints, fIndex);
-        copy.fYPoints = Arrays.copyOf(fYPoints, fIndex);
-        return copy;
-    }
-
-    /**
-     * Paints the progress/effect of executing a Pen command.
-     */
-    public void draw(Graphics g) {
-        g.drawPolyline(fXPoints, fYPoints, fIndex);
-    }
-
-    /**
-     * Returns true if the Pen command has started but not finished execution,
-     * false otherwise.
-     */
-    public boolean isExecuting() {
-        return fIsExecuting;
-    }
-
-    /**
-     * Returns true if this Pen object has identical state to the object
-     * supplied as argument, false otherwise.
-     */
-    public boolean equals(Object other) {
-        boolean result = false;
-
-        if (other != null && other instanceof Pen) {
-
-            Pen otherPen = (Pen) other;
-            result = Arrays.equals(fXPoints, otherPen.fXPoints)
-                    && Arrays.equals(fXPoints, otherPen.fXPoints)
-                    && fIndex == otherPen.fIndex
-                    && fIsExecuting == otherPen.fIsExecuting;
-        }
-        return result;
-    }
-
-    /**
-     * Implementation method to increase the capacity of the array used to store
-     * points of freehand drawing.
-     */
-    private void grow() {
-        fXPoints = Arrays.copyOf(fXPoints, fIndex + ARRAY_INCREMENT_SIZE);
-        fYPoints = Arrays.copyOf(fYPoints, fIndex + ARRAY_INCREMENT_SIZE);
-    }
-
-    /**
-     * Implementation method to append a point.
-     */
-    private void storePoint(MouseEvent event) {
-        fXPoints[fIndex] = event.getX();
-        fYPoints[fIndex] = event.getY();
-        fIndex++;
-    }
-}
+package client.commands;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import service_interface.BoundedDrawingCommand;
+import service_interface.ConfigurableDrawingCommand;
+import service_interface.DetailedDrawingCommand;
+import service_interface.DrawingCommand;
+import service_interface.DrawingCommandListener.DrawingCommandEvent;
+import service_interface.IncrementalDrawingCommand;
+
+/**
+ * Implementation of the DrawingCommand interface that allows the user to draw
+ * freehand.
+ * 
+ * When a stroke finishes, points that lie within a configurable tolerance of
+ * the line through their neighbours can be discarded, using the
+ * Ramer-Douglas-Peucker algorithm. This happens before listeners are told the
+ * stroke has completed, so the simplified stroke is what is stored and
+ * broadcast.
+ * 
+ * A Pen is serialised compactly: only its points are written, each as the
+ * difference from the previous point in a variable number of bytes. A
+ * deserialised Pen is always a finished command.
+ * 
+ * While a stroke is drawn it can be previewed incrementally: the points added
+ * since a mark are returned as a finished Pen that starts at the last point
+ * before the mark, so the pieces join up.
+ * 
+ * Points are stored in arrays that double in size as they fill. When a stroke
+ * finishes the arrays are trimmed to its points and frozen: they are never
+ * changed again, so clones of the finished Pen share them instead of copying
+ * them. The next stroke starts with new arrays.
+ * 
+ * A finished stroke drawn scaled down is drawn with fewer points: for each
+ * halving of the scale there is a level of detail, the stroke simplified so
+ * that it strays less than half a screen pixel at that scale. A level is
+ * computed the first time the stroke is drawn at a scale that needs it, then
+ * kept, and shared with clones along with the points. The points of the level
+ * are scaled to whole screen pixels as they are drawn, so the stroke costs no
+ * more to draw than the pixels it covers.
+ * 
+ * @author Ian Warren
+ * 
+ */
+public class Pen extends AbstractDrawingCommand implements
+        BoundedDrawingCommand, ConfigurableDrawingCommand,
+        DetailedDrawingCommand, IncrementalDrawingCommand, Externalizable {
+    // Version of the serialised form written by writeExternal().
+    private static final int FORMAT_VERSION = 1;
+
+    // Property naming the simplification tolerance, in pixels.
+    public static final String SIMPLIFICATION_TOLERANCE = "pen_simplification_tolerance";
+
+    // Point counts of all strokes before and after simplification.
+    private static final AtomicLong POINTS_DRAWN = new AtomicLong();
+    private static final AtomicLong POINTS_KEPT = new AtomicLong();
+
+    // Most points a serialised Pen may hold, far more than any stroke keeps
+    // once simplified, so that a corrupt count cannot demand huge arrays.
+    public static final int MAX_SERIALIZED_POINTS = 1 << 20;
+
+    // Initial capacity of the dynamic arrays, which double when full.
+    private static final int ARRAY_INITIAL_SIZE = 64;
+
+    // Number of levels of detail below full detail; level n is used at
+    // scales from 2^-n up to 2^(1-n).
+    private static final int DETAIL_LEVELS = 10;
+
+    // Attributes to record the pens's state.
+    private int[] fXPoints;
+    private int[] fYPoints;
+    int fIndex;
+
+    // True if the point arrays hold exactly the points of a finished stroke
+    // and may be shared with clones, so must not be changed.
+    private boolean fFrozen;
+
+    // Bounds of the points, or null if they have changed since the bounds
+    // were last computed.
+    private Rectangle fBounds;
+
+    // Levels of detail of a finished stroke, indexed by level less one, each
+    // null until it is first needed. Null while the stroke is in progress.
+    private volatile Detail[] fDetails;
+
+    // Attribute used to track whether or not the Pen command has started
+    // but not yet finished executing.
+    private boolean fIsExecuting;
+
+    // Maximum distance, in pixels, a discarded point may lie from the
+    // simplified stroke. Zero disables simplification.
+    private double fTolerance;
+
+    /**
+     * Creates a Pen DrawingCommand instance.
+     */
+    public Pen() {
+        fIsExecuting = false;
+        fXPoints = null;
+        fYPoints = null;
+        fIndex = 0;
+        fTolerance = 0;
+    }
+
+    /**
+     * Reads the simplification tolerance from the pen_simplification_tolerance
+     * property. Simplification is disabled if the property is absent.
+     */
+    public void configure(Properties properties) {
+        String value = properties.getProperty(SIMPLIFICATION_TOLERANCE);
+        if (value != null) {
+            try {
+                fTolerance = Math.max(0, Double.parseDouble(value.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Property " + SIMPLIFICATION_TOLERANCE
+                        + " is not a number.");
+            }
+        }
+    }
+
+    /**
+     * Sets the simplification tolerance in pixels. Zero disables
+     * simplification.
+     */
+    public void setSimplificationTolerance(double tolerance) {
+        fTolerance = Math.max(0, tolerance);
+    }
+
+    /**
+     * Returns the total number of points drawn by all Pen strokes completed
+     * in this process, before simplification.
+     */
+    public static long pointsDrawn() {
+        return POINTS_DRAWN.get();
+    }
+
+    /**
+     * Returns the total number of points kept by all Pen strokes completed in
+     * this process, after simplification.
+     */
+    public static long pointsKept() {
+        return POINTS_KEPT.get();
+    }
+
+    /**
+     * Processes a mouse-pressed event. This causes the Pen command to start
+     * executing.
+     */
+    public void mousePressed(MouseEvent event) {
+        fXPoints = new int[ARRAY_INITIAL_SIZE];
+        fYPoints = new int[ARRAY_INITIAL_SIZE];
+        fIndex = 0;
+        fFrozen = false;
+        fDetails = null;
+
+        storePoint(event);
+
+        // Notify any registered listeners that this command has started
+        // executing.
+        this.updateListeners(DrawingCommandEvent.DrawingStarted);
+        fIsExecuting = true;
+    }
+
+    /**
+     * Processes a mouse-released event. This causes the Pen command to complete
+     * execution.
+     */
+    public void mouseReleased(MouseEvent event) {
+        storePoint(event);
+        simplify();
+        freeze();
+
+        // Notify any registered listeners that this command has stopped
+        // executing.
+        this.updateListeners(DrawingCommandEvent.DrawingCompleted);
+        fIsExecuting = false;
+    }
+
+    /**
+     * Processes a mouse-dragged event. This occurs between execution start and
+     * completion, when the user holds down the mouse button and drags the
+     * mouse.
+     */
+    public void mouseDragged(MouseEvent event) {
+        storePoint(event);
+
+        // Notify any registered listeners that this command has made progress.
+        this.updateListeners(DrawingCommandEvent.DrawingProgressed);
+    }
+
+    /**
+     * Returns the number of points drawn so far.
+     */
+    public int progressMark() {
+        return fIndex;
+    }
+
+    /**
+     * Returns a finished Pen holding the points drawn since the mark, preceded
+     * by the point before the mark.
+     */
+    public DrawingCommand progressSince(int mark) {
+        int from = Math.max(0, Math.min(mark, fIndex) - 1);
+        Pen fragment = new Pen();
+        fragment.fXPoints = Arrays.copyOfRange(fXPoints, from, fIndex);
+        fragment.fYPoints = Arrays.copyOfRange(fYPoints, from, fIndex);
+        fragment.fIndex = fIndex - from;
+        fragment.fFrozen = true;
+        return fragment;
+    }
+
+    /**
+     * Returns a copy of a Pen object. The copy shares the points of a finished
+     * stroke, which never change, and copies those of a stroke in progress.
+     */
+    public Object clone() throws CloneNotSupportedException {
+        Pen copy = (Pen) super.clone();
+        if (!fFrozen) {
+            copy.fXPoints = Arrays.copyOf(fXPoints, fIndex);
+            copy.fYPoints = Arrays.copyOf(fYPoints, fIndex);
+            copy.fFrozen = true;
+            copy.fDetails = null;
+        }
+        return copy;
+    }
+
+    /**
+     * Paints the progress/effect of executing a Pen command.
+     */
+    public void draw(Graphics g) {
+        g.drawPolyline(fXPoints, fYPoints, fIndex);
+    }
+
+    /**
+     * Paints the stroke scaled down, with the level of detail for the scale if
+     * it is finished. The points are scaled and rounded to whole pixels here,
+     * and repeated points left out, so that the graphics can draw the
+     * polyline without a transform.
+     */
+    public void draw(Graphics g, double scale) {
+        int[] xPoints = fXPoints;
+        int[] yPoints = fYPoints;
+        int count = fIndex;
+        if (fFrozen) {
+            Detail detail = detail(Math.max(1, Math.min(DETAIL_LEVELS, -Math
+                    .getExponent(scale))));
+            xPoints = detail.fXPoints;
+            yPoints = detail.fYPoints;
+            count = detail.fCount;
+        }
+
+        int[] xScaled = new int[count];
+        int[] yScaled = new int[count];
+        int scaled = 0;
+        for (int i = 0; i < count; i++) {
+            int x = (int) Math.floor(xPoints[i] * scale + 0.5);
+            int y = (int) Math.floor(yPoints[i] * scale + 0.5);
+            if (scaled == 0 || x != xScaled[scaled - 1]
+                    || y != yScaled[scaled - 1]) {
+                xScaled[scaled] = x;
+                yScaled[scaled] = y;
+                scaled++;
+            }
+        }
+        g.drawPolyline(xScaled, yScaled, scaled);
+    }
+
+    /**
+     * Returns the bounds of the points drawn, computed the first time they are
+     * asked for after the points change.
+     */
+    public Rectangle bounds() {
+        if (fBounds == null) {
+            if (fIndex == 0) {
+                return new Rectangle();
+            }
+            int minX = fXPoints[0];
+            int minY = fYPoints[0];
+            int maxX = minX;
+            int maxY = minY;
+            for (int i = 1; i < fIndex; i++) {
+                minX = Math.min(minX, fXPoints[i]);
+                minY = Math.min(minY, fYPoints[i]);
+                maxX = Math.max(maxX, fXPoints[i]);
+                maxY = Math.max(maxY, fYPoints[i]);
+            }
+            fBounds = new Rectangle(minX, minY, maxX - minX + 1, maxY - minY
+                    + 1);
+        }
+        return new Rectangle(fBounds);
+    }
+
+    /**
+     * Returns the bounds of the newest segment, which is all that changes when
+     * a point is added.
+     */
+    public Rectangle changedBounds() {
+        if (fIndex == 0) {
+            return new Rectangle();
+        }
+        int from = Math.max(0, fIndex - 2);
+        Rectangle changed = new Rectangle(fXPoints[from], fYPoints[from], 1, 1);
+        changed.add(new Rectangle(fXPoints[fIndex - 1], fYPoints[fIndex - 1],
+                1, 1));
+        return changed;
+    }
+
+    /**
+     * Returns true if the Pen command has started but not finished execution,
+     * false otherwise.
+     */
+    public boolean isExecuting() {
+        return fIsExecuting;
+    }
+
+    /**
+     * Returns true if this Pen object has identical state to the object
+     * supplied as argument, false otherwise.
+     */
+    public boolean equals(Object other) {
+        boolean result = false;
+
+        if (other != null && other instanceof Pen) {
+
+            Pen otherPen = (Pen) other;
+            result = Arrays.equals(fXPoints, otherPen.fXPoints)
+                    && Arrays.equals(fXPoints, otherPen.fXPoints)
+                    && fIndex == otherPen.fIndex
+                    && fIsExecuting == otherPen.fIsExecuting;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the Pen's points, delta encoded.
+     */
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeVarInt(out, fIndex);
+
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < fIndex; i++) {
+            writeVarInt(out, fXPoints[i] - x);
+            writeVarInt(out, fYPoints[i] - y);
+            x = fXPoints[i];
+            y = fYPoints[i];
+        }
+    }
+
+    /**
+     * Reads points written by writeExternal().
+     */
+    public void readExternal(ObjectInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new InvalidObjectException("Unknown Pen format " + version);
+        }
+
+        fIndex = readVarInt(in);
+        if (fIndex < 0 || fIndex > MAX_SERIALIZED_POINTS) {
+            throw new InvalidObjectException("Invalid point count " + fIndex);
+        }
+        fXPoints = new int[fIndex];
+        fYPoints = new int[fIndex];
+
+        int x = 0;
+        int y = 0;
+        for (int i = 0; i < fIndex; i++) {
+            x += readVarInt(in);
+            y += readVarInt(in);
+            fXPoints[i] = x;
+            fYPoints[i] = y;
+        }
+        fBounds = null;
+        fFrozen = true;
+        fDetails = null;
+        fIsExecuting = false;
+    }
+
+    /**
+     * Implementation method to discard points that lie within the tolerance
+     * of the simplified stroke. The first and last points are always kept.
+     */
+    private void simplify() {
+        int drawn = fIndex;
+
+        if (fTolerance > 0 && fIndex > 2) {
+            boolean[] keep = keep(fXPoints, fYPoints, fIndex, fTolerance);
+            int kept = 0;
+            for (int i = 0; i < fIndex; i++) {
+                if (keep[i]) {
+                    fXPoints[kept] = fXPoints[i];
+                    fYPoints[kept] = fYPoints[i];
+                    kept++;
+                }
+            }
+            fIndex = kept;
+            fBounds = null;
+        }
+
+        POINTS_DRAWN.addAndGet(drawn);
+        POINTS_KEPT.addAndGet(fIndex);
+    }
+
+    /**
+     * Implementation method returning a level of detail of a finished stroke,
+     * computing it if it has not been needed before. Levels may be computed
+     * by several threads drawing the stroke at once; each computes the same
+     * points, and whichever is stored last is kept.
+     */
+    private Detail detail(int level) {
+        Detail[] details = fDetails;
+        if (details == null) {
+            details = new Detail[DETAIL_LEVELS];
+            fDetails = details;
+        }
+        Detail detail = details[level - 1];
+        if (detail == null) {
+            double tolerance = Math.scalb(0.25, level);
+            if (fIndex > 2) {
+                boolean[] keep = keep(fXPoints, fYPoints, fIndex, tolerance);
+                int[] xPoints = new int[fIndex];
+                int[] yPoints = new int[fIndex];
+                int kept = 0;
+                for (int i = 0; i < fIndex; i++) {
+                    if (keep[i]) {
+                        xPoints[kept] = fXPoints[i];
+                        yPoints[kept] = fYPoints[i];
+                        kept++;
+                    }
+                }
+                detail = new Detail(Arrays.copyOf(xPoints, kept), Arrays
+                        .copyOf(yPoints, kept), kept);
+            } else {
+                detail = new Detail(fXPoints, fYPoints, fIndex);
+            }
+            details[level - 1] = detail;
+        }
+        return detail;
+    }
+
+    /**
+     * Implementation method to choose the points of a stroke that the
+     * Ramer-Douglas-Peucker algorithm keeps: those without which the stroke
+     * would stray further than a tolerance from where it was drawn. The first
+     * and last points are always kept.
+     */
+    private static boolean[] keep(int[] xPoints, int[] yPoints, int count,
+            double tolerance) {
+        boolean[] keep = new boolean[count];
+        keep[0] = true;
+        keep[count - 1] = true;
+        double toleranceSquared = tolerance * tolerance;
+
+        // An explicit stack of spans, so that long strokes cannot overflow
+        // the call stack.
+        int[] stack = new int[2 * count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            int farthest = -1;
+            double farthestDistance = toleranceSquared;
+            for (int i = first + 1; i < last; i++) {
+                double distance = distanceSquared(xPoints, yPoints, i, first,
+                        last);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        return keep;
+    }
+
+    /**
+     * Returns the squared distance of a point from the line segment between
+     * two other points.
+     */
+    private static double distanceSquared(int[] xPoints, int[] yPoints,
+            int point, int first, int last) {
+        double x = xPoints[point] - xPoints[first];
+        double y = yPoints[point] - yPoints[first];
+        double dx = xPoints[last] - xPoints[first];
+        double dy = yPoints[last] - yPoints[first];
+        double lengthSquared = dx * dx + dy * dy;
+
+        if (lengthSquared > 0) {
+            double t = Math.max(0, Math.min(1, (x * dx + y * dy)
+                    / lengthSquared));
+            x -= t * dx;
+            y -= t * dy;
+        }
+        return x * x + y * y;
+    }
+
+    /**
+     * Implementation method to double the capacity of the arrays used to
+     * store points of freehand drawing. The arrays are copied, so frozen
+     * arrays are left as they are.
+     */
+    private void grow() {
+        int capacity = Math.max(ARRAY_INITIAL_SIZE, fXPoints.length * 2);
+        fXPoints = Arrays.copyOf(fXPoints, capacity);
+        fYPoints = Arrays.copyOf(fYPoints, capacity);
+        fFrozen = false;
+        fDetails = null;
+    }
+
+    /**
+     * Implementation method to trim the arrays to the points of a finished
+     * stroke and freeze them.
+     */
+    private void freeze() {
+        if (fXPoints.length != fIndex) {
+            fXPoints = Arrays.copyOf(fXPoints, fIndex);
+            fYPoints = Arrays.copyOf(fYPoints, fIndex);
+        }
+        fFrozen = true;
+    }
+
+    /**
+     * Implementation method to append a point.
+     */
+    private void storePoint(MouseEvent event) {
+        if (fFrozen || fIndex == fXPoints.length) {
+            grow();
+        }
+        fXPoints[fIndex] = event.getX();
+        fYPoints[fIndex] = event.getY();
+        fIndex++;
+        fBounds = null;
+    }
+
+    /**
+     * A level of detail of a finished stroke: the points kept when it is
+     * simplified for drawing at a smaller scale.
+     */
+    private static class Detail {
+        final int[] fXPoints;
+        final int[] fYPoints;
+        final int fCount;
+
+        Detail(int[] xPoints, int[] yPoints, int count) {
+            fXPoints = xPoints;
+            fYPoints = yPoints;
+            fCount = count;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package server;
+
+import service_interface.DrawingClient;
+
+/**
+ * A registered drawing client, as known to the server. When a client
+ * registers, the server asks for its name once and assigns it a compact
+ * session ID. Queued commands are tagged with the ID of the session that sent
+ * them, so a dispatcher can skip a client's own commands without calling the
+ * client.
+ * 
+ * @author Andrew
+ * 
+ */
+public class ClientSession {
+
+    // Session ID of senders that are not registered clients.
+    public static final int NO_SESSION = 0;
+
+    private int fId;
+    private String fName;
+    private DrawingClient fClient;
+    private DrawingCommandDispatcher fDispatcher;
+
+    public ClientSession(int id, String name, DrawingClient client,
+            DrawingCommandDispatcher dispatcher) {
+        fId = id;
+        fName = name;
+        fClient = client;
+        fDispatcher = dispatcher;
+    }
+
+    /**
+     * Returns the session ID assigned when the client registered.
+     */
+    public int id() {
+        return fId;
+    }
+
+    /**
+     * Returns the name the client gave when it registered.
+     */
+    public String name() {
+        return fName;
+    }
+
+    /**
+     * Returns the client's remote reference.
+     */
+    public DrawingClient client() {
+        return fClient;
+    }
+
+    /**
+     * Returns the dispatcher that owns the client's outbound queue.
+     */
+    public DrawingCommandDispatcher dispatcher() {
+        return fDispatcher;
+    }
+}
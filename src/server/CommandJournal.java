@@ -0,0 +1,460 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import service_interface.CodebaseObjectInputStream;
+import service_interface.CodebaseObjectOutputStream;
+import service_interface.DrawingCommand;
+
+/**
+ * Durable, append-only record of the commands accepted by a drawing server,
+ * so that the shared drawing survives a server restart.
+ * 
+ * Commands are appended to memory-mapped segment files. Appending only copies
+ * the command into the mapping; a background thread forces dirty segments to
+ * disk every sync interval, so one disk sync covers every command appended in
+ * that interval and broadcasts never wait on the disk. A crash can therefore
+ * lose at most the last sync interval of commands.
+ * 
+ * Each record is its length, a CRC-32 of its contents and the serialised
+ * command. A segment is named after the index of its first record. When a
+ * checkpoint is saved, segments holding only commands that the checkpoint
+ * covers are deleted.
+ * 
+ * @author Andrew
+ * 
+ */
+public class CommandJournal {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".png";
+
+    // Length and CRC of a record.
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /**
+     * The state recovered from a journal: the latest checkpoint and the
+     * commands appended after it.
+     */
+    public static class Recovery {
+        DrawingCheckpoint fCheckpoint;
+        List<DrawingCommand> fCommands;
+
+        Recovery(DrawingCheckpoint checkpoint, List<DrawingCommand> commands) {
+            fCheckpoint = checkpoint;
+            fCommands = commands;
+        }
+
+        /**
+         * Returns the latest saved checkpoint, or null if none was saved.
+         */
+        public DrawingCheckpoint checkpoint() {
+            return fCheckpoint;
+        }
+
+        /**
+         * Returns the commands appended after the checkpoint, in order.
+         */
+        public List<DrawingCommand> commands() {
+            return fCommands;
+        }
+    }
+
+    private File fDirectory;
+    private int fSegmentSize;
+    private long fSyncIntervalMillis;
+
+    private MappedByteBuffer fSegment;
+    private long fNextIndex;
+    private boolean fDirty;
+    private ScheduledExecutorService fSyncer;
+
+    /**
+     * Creates a journal kept in the specified directory. The journal cannot
+     * be appended to until it has been recovered.
+     * 
+     * @param directory
+     *            The directory holding the journal's files. It is created if
+     *            it does not exist.
+     * @param segmentSize
+     *            The size in bytes of each segment file.
+     * @param syncIntervalMillis
+     *            How often, in milliseconds, appended commands are forced to
+     *            disk.
+     */
+    public CommandJournal(File directory, int segmentSize,
+            long syncIntervalMillis) {
+        fDirectory = directory;
+        fSegmentSize = segmentSize;
+        fSyncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * Reads the journal, and prepares it to be appended to. A record that was
+     * only partly written when the server stopped, and anything after it, is
+     * discarded.
+     * 
+     * @throws IOException
+     *             if the journal directory cannot be read or written.
+     */
+    public synchronized Recovery recover() throws IOException {
+        if (!fDirectory.isDirectory() && !fDirectory.mkdirs()) {
+            throw new IOException("Unable to create journal directory "
+                    + fDirectory);
+        }
+
+        DrawingCheckpoint checkpoint = loadCheckpoint();
+        long checkpointCount = checkpoint == null ? 0 : checkpoint
+                .commandCount();
+        List<DrawingCommand> commands = new ArrayList<DrawingCommand>();
+
+        long[] segments = segmentIndexes();
+        long index = segments.length == 0 ? checkpointCount : segments[0];
+
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i] != index) {
+                // A segment is missing, so nothing from here on can be
+                // trusted.
+                System.err.println("Journal segment " + segments[i]
+                        + " does not follow on from record " + index + ".");
+                deleteSegmentsFrom(i);
+                break;
+            }
+
+            MappedByteBuffer segment = map(segments[i], 0);
+            int position = 0;
+            boolean torn = false;
+
+            while (position + RECORD_HEADER_SIZE <= segment.limit()) {
+                int length = segment.getInt(position);
+                if (length == 0) {
+                    // End of the records in this segment.
+                    break;
+                }
+                if (length < 0
+                        || length > segment.limit() - position
+                                - RECORD_HEADER_SIZE) {
+                    torn = true;
+                    break;
+                }
+
+                byte[] record = new byte[length];
+                segment.position(position + RECORD_HEADER_SIZE);
+                segment.get(record);
+                if (crc(record) != segment.getInt(position + 4)) {
+                    torn = true;
+                    break;
+                }
+
+                // Commands already in the checkpoint are skipped without
+                // being read.
+                if (index >= checkpointCount) {
+                    commands.add(readCommand(record));
+                }
+                index++;
+                position += RECORD_HEADER_SIZE + length;
+            }
+
+            boolean last = torn || i == segments.length - 1;
+            if (torn) {
+                System.err.println("Discarding torn journal record "
+                        + index + ".");
+                for (int p = position; p < segment.limit(); p++) {
+                    segment.put(p, (byte) 0);
+                }
+                segment.force();
+                deleteSegmentsFrom(i + 1);
+            }
+            if (last) {
+                fSegment = segment;
+                fSegment.position(position);
+                break;
+            }
+        }
+
+        if (index < checkpointCount) {
+            // The journal ends before the checkpoint, so start afresh from
+            // the checkpoint.
+            deleteSegmentsFrom(0);
+            fSegment = null;
+            index = checkpointCount;
+        }
+        if (fSegment == null) {
+            fSegment = map(index, fSegmentSize);
+        }
+        fNextIndex = index;
+
+        startSyncer();
+        return new Recovery(checkpoint, commands);
+    }
+
+    /**
+     * Appends a command to the journal. The command is durable once the next
+     * sync has taken place.
+     * 
+     * @throws IOException
+     *             if the command cannot be serialised or a new segment cannot
+     *             be created.
+     */
+    public synchronized void append(DrawingCommand cmd) throws IOException {
+        byte[] record = writeCommand(cmd);
+
+        if (fSegment.remaining() < RECORD_HEADER_SIZE + record.length) {
+            // Start a new segment, large enough for the record if it is
+            // bigger than a segment. The previous segment is synced now,
+            // since the syncer only knows about the current one.
+            fSegment.force();
+            fSegment = map(fNextIndex,
+                    Math.max(fSegmentSize, 2 * RECORD_HEADER_SIZE
+                            + record.length));
+        }
+
+        // Write the record's body before its length, so a record is never
+        // visible with a length but without its contents.
+        int position = fSegment.position();
+        fSegment.putInt(position + 4, crc(record));
+        fSegment.position(position + RECORD_HEADER_SIZE);
+        fSegment.put(record);
+        fSegment.putInt(position, record.length);
+
+        fNextIndex++;
+        fDirty = true;
+    }
+
+    /**
+     * Saves a checkpoint and deletes segments holding only commands that it
+     * covers. The previous checkpoint is kept until the new one has been
+     * written in full.
+     * 
+     * @throws IOException
+     *             if the checkpoint cannot be written.
+     */
+    public void saveCheckpoint(DrawingCheckpoint checkpoint)
+            throws IOException {
+        File file = checkpointFile(checkpoint.commandCount());
+        File temporary = new File(fDirectory, file.getName() + ".tmp");
+
+        OutputStream out = new FileOutputStream(temporary);
+        try {
+            out.write(checkpoint.encodedImage());
+        } finally {
+            out.close();
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Unable to save checkpoint " + file);
+        }
+
+        for (File old : fDirectory.listFiles()) {
+            String name = old.getName();
+            if (name.startsWith(CHECKPOINT_PREFIX) && !old.equals(file)) {
+                old.delete();
+            }
+        }
+
+        synchronized (this) {
+            // A segment can go once the segment after it starts at or before
+            // the checkpoint; the current segment is always kept.
+            long[] segments = segmentIndexes();
+            for (int i = 0; i + 1 < segments.length; i++) {
+                if (segments[i + 1] <= checkpoint.commandCount()) {
+                    segmentFile(segments[i]).delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Syncs the journal to disk and stops the background syncer.
+     */
+    public synchronized void close() {
+        if (fSyncer != null) {
+            fSyncer.shutdownNow();
+            fSyncer = null;
+        }
+        if (fSegment != null) {
+            fSegment.force();
+        }
+    }
+
+    /**
+     * Forces the current segment to disk if commands have been appended
+     * since the last sync.
+     */
+    private void sync() {
+        MappedByteBuffer segment;
+        synchronized (this) {
+            if (!fDirty) {
+                return;
+            }
+            segment = fSegment;
+            fDirty = false;
+        }
+        segment.force();
+    }
+
+    private void startSyncer() {
+        fSyncer = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "journal-syncer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        fSyncer.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                sync();
+            }
+        }, fSyncIntervalMillis, fSyncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the latest checkpoint saved in the journal directory, or null.
+     */
+    private DrawingCheckpoint loadCheckpoint() throws IOException {
+        long latest = -1;
+        for (String name : fDirectory.list()) {
+            if (name.startsWith(CHECKPOINT_PREFIX)
+                    && name.endsWith(CHECKPOINT_SUFFIX)) {
+                latest = Math.max(latest, parseIndex(name, CHECKPOINT_PREFIX,
+                        CHECKPOINT_SUFFIX));
+            }
+        }
+        if (latest < 0) {
+            return null;
+        }
+
+        File file = checkpointFile(latest);
+        byte[] encodedImage = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < encodedImage.length) {
+                int n = in.read(encodedImage, read, encodedImage.length - read);
+                if (n < 0) {
+                    throw new IOException("Checkpoint " + file + " truncated");
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return DrawingCheckpoint.decode(encodedImage, latest);
+    }
+
+    /**
+     * Returns the first record index of each segment, in ascending order.
+     */
+    private long[] segmentIndexes() {
+        List<Long> indexes = new ArrayList<Long>();
+        for (String name : fDirectory.list()) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                long index = parseIndex(name, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+                if (index >= 0) {
+                    indexes.add(index);
+                }
+            }
+        }
+
+        long[] result = new long[indexes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = indexes.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private void deleteSegmentsFrom(int from) {
+        long[] segments = segmentIndexes();
+        for (int i = from; i < segments.length; i++) {
+            segmentFile(segments[i]).delete();
+        }
+    }
+
+    /**
+     * Maps a segment file into memory, creating it with the specified size
+     * if it does not exist. A size of zero maps an existing file as it is.
+     */
+    private MappedByteBuffer map(long firstIndex, int size) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(firstIndex),
+                "rw");
+        try {
+            if (size > 0 && file.length() < size) {
+                file.setLength(size);
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    file.length());
+        } finally {
+            // The mapping stays valid once the file is closed.
+            file.close();
+        }
+    }
+
+    private File segmentFile(long firstIndex) {
+        return new File(fDirectory, SEGMENT_PREFIX + firstIndex
+                + SEGMENT_SUFFIX);
+    }
+
+    private File checkpointFile(long commandCount) {
+        return new File(fDirectory, CHECKPOINT_PREFIX + commandCount
+                + CHECKPOINT_SUFFIX);
+    }
+
+    private static long parseIndex(String name, String prefix, String suffix) {
+        try {
+            return Long.parseLong(name.substring(prefix.length(),
+                    name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int crc(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] writeCommand(DrawingCommand cmd) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new CodebaseObjectOutputStream(bytes);
+        out.writeObject(cmd);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static DrawingCommand readCommand(byte[] record)
+            throws IOException {
+        ObjectInputStream in = new CodebaseObjectInputStream(
+                new ByteArrayInputStream(record));
+        try {
+            return (DrawingCommand) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to load journalled command", e);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package server;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import service_interface.DrawingCommand;
+
+/**
+ * A raster image of the oldest part of a drawing server's command log. Once
+ * commands are folded into a checkpoint they no longer need to be kept or
+ * sent individually; a joining client receives the checkpoint image followed
+ * by the commands executed since.
+ * 
+ * The image covers a fixed area of the canvas from its origin, so only
+ * commands drawn wholly inside bounds() may be folded into it; anything else
+ * would be lost.
+ * 
+ * Checkpoints are immutable. Folding further commands produces a new
+ * checkpoint, so one can be handed to a dispatcher while the next is being
+ * built.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingCheckpoint {
+
+    // Colour that DrawingSpace paints commands in; the two must match.
+    private static final Color FOREGROUND_COLOR = Color.BLACK;
+
+    private BufferedImage fImage;
+    private byte[] fEncodedImage;
+    private long fCommandCount;
+
+    private DrawingCheckpoint(BufferedImage image, byte[] encodedImage,
+            long commandCount) {
+        fImage = image;
+        fEncodedImage = encodedImage;
+        fCommandCount = commandCount;
+    }
+
+    private DrawingCheckpoint(BufferedImage image, long commandCount)
+            throws IOException {
+        this(image, encode(image), commandCount);
+    }
+
+    /**
+     * Creates an empty checkpoint.
+     * 
+     * @param width
+     *            Width of the checkpoint image in pixels.
+     * @param height
+     *            Height of the checkpoint image in pixels.
+     */
+    public static DrawingCheckpoint empty(int width, int height)
+            throws IOException {
+        return new DrawingCheckpoint(new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB), 0);
+    }
+
+    /**
+     * Recreates a checkpoint from its PNG encoded image, e.g. as saved by a
+     * CommandJournal.
+     * 
+     * @param encodedImage
+     *            The PNG encoded checkpoint image.
+     * @param commandCount
+     *            The number of commands folded into the image.
+     * @throws IOException
+     *             if the image cannot be decoded.
+     */
+    public static DrawingCheckpoint decode(byte[] encodedImage,
+            long commandCount) throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(
+                encodedImage));
+        if (decoded == null) {
+            throw new IOException("Checkpoint image is not a PNG image");
+        }
+
+        // Convert to the image type that fold() draws on.
+        BufferedImage image = new BufferedImage(decoded.getWidth(),
+                decoded.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(decoded, 0, 0, null);
+        g.dispose();
+        return new DrawingCheckpoint(image, encodedImage, commandCount);
+    }
+
+    /**
+     * Returns a new checkpoint holding this checkpoint's image with a list of
+     * commands drawn over it. This checkpoint is left unchanged.
+     * 
+     * @param cmds
+     *            The commands to fold in, in the order they were executed.
+     * @throws IOException
+     *             if the new image cannot be encoded.
+     */
+    public DrawingCheckpoint fold(List<DrawingCommand> cmds)
+            throws IOException {
+        BufferedImage image = new BufferedImage(fImage.getWidth(),
+                fImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.drawImage(fImage, 0, 0, null);
+            g.setColor(FOREGROUND_COLOR);
+            for (DrawingCommand cmd : cmds) {
+                cmd.draw(g);
+            }
+        } finally {
+            g.dispose();
+        }
+        return new DrawingCheckpoint(image, fCommandCount + cmds.size());
+    }
+
+    /**
+     * Returns the area of the canvas the checkpoint image covers.
+     */
+    public Rectangle bounds() {
+        return new Rectangle(fImage.getWidth(), fImage.getHeight());
+    }
+
+    /**
+     * Returns the checkpoint image encoded as PNG.
+     */
+    public byte[] encodedImage() {
+        return fEncodedImage;
+    }
+
+    /**
+     * Returns the number of commands that have been folded into the
+     * checkpoint.
+     */
+    public long commandCount() {
+        return fCommandCount;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", bytes);
+        return bytes.toByteArray();
+    }
+}
@@ -1,45 +1,688 @@
-package server;
-
-import java.rmi.RemoteException;
-
-import service_interface.DrawingClient;
-import service_interface.DrawingCommand;
-
-/**
- * Dispatch a finished drawing command to a specific drawing client.
- */
-public class DrawingCommandDispatcher implements Runnable {
-
-    String fSender;
-    DrawingClient fClient;
-    DrawingCommand fCmd;
-
-    /**
-     * Creates a new command dispatcher.
-     * 
-     * @param sender
-     *            The originator of the command. We need to know this so that we
-     *            do not retransmit the command back to the originator.
-     * @param client
-     *            The client to send the drawing command to.
-     * @param cmd
-     *            The drawing command to send to the client.
-     */
-    public DrawingCommandDispatcher(String sender, DrawingClient client,
-            DrawingCommand cmd) {
-        fSender = sender;
-        fClient = client;
-        fCmd = cmd;
-    }
-
-    @Override
-    public void run() {
-        try {
-            // Don't send the command if it came from the client.
-            if (!fSender.equalsIgnoreCase(fClient.getName()))
-                fClient.receiveDrawingCommandFromServer(fCmd);
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
-    }
-}
+package server;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.rmi.ServerException;
+import java.rmi.UnmarshalException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import server.ServerConfiguration.OverflowPolicy;
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPeer;
+import service_interface.DrawingPreview;
+import service_interface.DrawingServer;
+import service_interface.DrawingSnapshot;
+
+/**
+ * Dispatch finished drawing commands to a specific drawing client. Each
+ * registered client has exactly one dispatcher, which owns a bounded FIFO
+ * queue of commands waiting to be sent and a single thread that drains it, so
+ * a client receives commands in the order the server accepted them. Whatever
+ * has built up in the queue is sent to the client in one remote call.
+ * 
+ * Previews of commands still executing on other clients share the queue, so
+ * they stay in order with finished commands, but they are ephemeral: a
+ * preview is dropped rather than waited for if the queue is full, and the
+ * previews in a batch are coalesced into at most one per sender.
+ * 
+ * Deliveries are tagged with the session ID of the client that sent them, so
+ * the dispatcher skips its own client's commands without a remote call.
+ * Commands are also tagged with the sequence number the server gave them, and
+ * each batch sent tells the client the sequence number it has reached,
+ * counting its own commands, so that it can resume from there. A batch of
+ * only the client's own commands is sent as an empty batch, for the sequence
+ * number alone.
+ * 
+ * The dispatcher keeps the sequence number the client has acknowledged, by a
+ * call that returned. The client is first sent a snapshot of the server's
+ * commands since the sequence number it registered with. If a call to the
+ * client fails, the commands it carried are not lost: before the next batch,
+ * the client is sent a snapshot of everything since the sequence number it
+ * last acknowledged, taken from the server's log, less its own commands. If
+ * nothing else is queued meanwhile, the snapshot is sent after a delay, which
+ * doubles while the client stays unreachable. A client that cannot be
+ * reached for FAILURE_TIMEOUT_MILLIS is given up on: the dispatcher closes,
+ * and the server deregisters the client.
+ * 
+ * Each dispatcher records how long its client takes to receive commands, and
+ * how many calls to it fail, both for itself and in the server's metrics.
+ * 
+ * If the client is a DrawingPeer, i.e. a follower node of a cluster, it is
+ * always sent a snapshot, even an empty one, and is told who sent each
+ * command.
+ */
+public class DrawingCommandDispatcher implements Runnable {
+
+    // How long calls to a client may go on failing before it is given up on.
+    public static final long FAILURE_TIMEOUT_MILLIS = 60000;
+
+    // Delay before a client that missed commands is sent them, if nothing
+    // else is queued for it first, doubled after each attempt up to the
+    // maximum.
+    public static final long RESYNC_DELAY_MILLIS = 500;
+    public static final long MAX_RESYNC_DELAY_MILLIS = 30000;
+
+    // Longest a broadcast waits for room in a full queue under the Block
+    // policy. The broadcast holds the server's monitor meanwhile.
+    public static final long BLOCK_TIMEOUT_MILLIS = 100;
+
+    // Start of the message with which RMI rejects a call to a method the
+    // remote object does not have.
+    private static final String UNRECOGNIZED_METHOD_HASH = "unrecognized method hash";
+
+    /**
+     * A command or preview waiting to be sent, together with the session ID
+     * and name of its originator and, for a command, its sequence number and
+     * when the server accepted it. At most one of fCmd and fPreview is
+     * non-null; if neither is, the delivery only wakes the dispatcher.
+     */
+    static class Delivery {
+        int fSender;
+        String fSenderName;
+        DrawingCommand fCmd;
+        DrawingPreview fPreview;
+        long fSequence;
+        long fAcceptedNanos;
+
+        Delivery(int sender, String senderName, DrawingCommand cmd,
+                DrawingPreview preview, long sequence, long acceptedNanos) {
+            fSender = sender;
+            fSenderName = senderName;
+            fCmd = cmd;
+            fPreview = preview;
+            fSequence = sequence;
+            fAcceptedNanos = acceptedNanos;
+        }
+    }
+
+    DrawingClient fClient;
+    DrawingPeer fPeer;
+    int fSession;
+    DrawingServer fServer;
+    BlockingQueue<Delivery> fQueue;
+    OverflowPolicy fOverflowPolicy;
+
+    // Number of previews in the queue, so that a queue of only commands is
+    // not searched for one to drop.
+    AtomicInteger fQueuedPreviews;
+    int fMaxBatchSize;
+    long fMaxLingerMillis;
+    boolean fCompressSnapshot;
+
+    // Delivery latency and failed calls of this client; the server's metrics
+    // record the same over all clients.
+    LatencyHistogram fLatency;
+    AtomicLong fFailedDeliveries;
+    DrawingServerMetrics fMetrics;
+
+    // Cleared once the client is found not to support sequenced or batched
+    // delivery, or previews.
+    boolean fSequenceSupported;
+    boolean fBatchSupported;
+    boolean fPreviewsSupported;
+
+    // Sequence number of the last command the client is known to have, and
+    // whether it is to be sent a snapshot of those after it before anything
+    // else. Used only by the dispatcher's thread, but for the flag.
+    long fAcknowledged;
+    AtomicBoolean fResyncPending;
+
+    // When calls to the client started failing, or zero while they succeed,
+    // and how long to wait before sending missed commands unprompted.
+    long fFailingSinceMillis;
+    long fResyncDelayMillis;
+
+    // Sequence numbers of the client's own commands not yet acknowledged,
+    // which are left out of snapshots as they are out of batches.
+    NavigableSet<Long> fOwnSequences;
+
+    private volatile boolean fClosed;
+    private volatile Thread fThread;
+
+    /**
+     * Creates a new command dispatcher.
+     * 
+     * @param client
+     *            The client to send drawing commands to.
+     * @param session
+     *            The client's session ID.
+     * @param server
+     *            The server whose commands are dispatched, from which the
+     *            commands the client lacks are fetched.
+     * @param sequence
+     *            The sequence number of the last command the client has. The
+     *            commands after it are sent as a single snapshot before
+     *            anything that is queued.
+     * @param configuration
+     *            Supplies the queue capacity and overflow policy, the maximum
+     *            batch size and linger time used when sending, and whether
+     *            snapshots are compressed.
+     * @param metrics
+     *            The server's metrics, into which deliveries are recorded.
+     */
+    public DrawingCommandDispatcher(DrawingClient client, int session,
+            DrawingServer server, long sequence,
+            ServerConfiguration configuration, DrawingServerMetrics metrics) {
+        fClient = client;
+        fPeer = client instanceof DrawingPeer ? (DrawingPeer) client : null;
+        fSession = session;
+        fServer = server;
+        fQueue = new ArrayBlockingQueue<Delivery>(
+                configuration.clientQueueCapacity());
+        fOverflowPolicy = configuration.clientQueueOverflowPolicy();
+        fMaxBatchSize = configuration.clientBatchSize();
+        fMaxLingerMillis = configuration.clientBatchLingerMillis();
+        fCompressSnapshot = configuration.compressSnapshots();
+        fLatency = new LatencyHistogram();
+        fFailedDeliveries = new AtomicLong();
+        fMetrics = metrics;
+        fSequenceSupported = true;
+        fBatchSupported = true;
+        fPreviewsSupported = true;
+        fAcknowledged = sequence;
+        fResyncPending = new AtomicBoolean();
+        fQueuedPreviews = new AtomicInteger();
+        fResyncDelayMillis = RESYNC_DELAY_MILLIS;
+        fOwnSequences = new ConcurrentSkipListSet<Long>();
+        fClosed = false;
+    }
+
+    /**
+     * Queues a drawing command for delivery to the client.
+     * 
+     * @param sender
+     *            The session ID of the originator of the command. We need to
+     *            know this so that we do not retransmit the command back to
+     *            the originator.
+     * @param senderName
+     *            The name of the originator.
+     * @param cmd
+     *            The drawing command to send to the client.
+     * @param sequence
+     *            The sequence number the server gave the command.
+     * @param acceptedNanos
+     *            When the server accepted the command, by System.nanoTime().
+     * @return false if the dispatcher has closed, because the queue was full
+     *         and the Disconnect policy applies or because the client could
+     *         not be reached, true otherwise. The caller is responsible for
+     *         deregistering a closed dispatcher's client.
+     */
+    public boolean enqueue(int sender, String senderName, DrawingCommand cmd,
+            long sequence, long acceptedNanos) {
+        if (fClosed) {
+            return false;
+        }
+        if (sender == fSession) {
+            fOwnSequences.add(sequence);
+        }
+        Delivery delivery = new Delivery(sender, senderName, cmd, null,
+                sequence, acceptedNanos);
+
+        switch (fOverflowPolicy) {
+        case Block:
+            // A client still waiting to be resynced is not waited for again.
+            if (fResyncPending.get() && fQueue.remainingCapacity() == 0) {
+                return true;
+            }
+            try {
+                if (!fQueue.offer(delivery, BLOCK_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS)) {
+                    // The client is sent the command from the server's log
+                    // before its next batch instead.
+                    fResyncPending.set(true);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fResyncPending.set(true);
+            }
+            return true;
+        case DropOldest:
+            while (!fQueue.offer(delivery)) {
+                if (!dropOldestPreview()) {
+                    // Only commands are waiting, and none may be lost. The
+                    // client is sent this one, and any after it, from the
+                    // server's log before the next batch instead.
+                    fResyncPending.set(true);
+                    return true;
+                }
+            }
+            return true;
+        default:
+            if (!fQueue.offer(delivery)) {
+                ServerLog.println("Outbound queue full, disconnecting client.");
+                close();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Queues a preview for delivery to the client, unless the queue is full,
+     * in which case the preview is dropped. This never blocks.
+     * 
+     * @param sender
+     *            The session ID of the originator of the preview.
+     * @param preview
+     *            The preview to send to the client.
+     */
+    public void enqueuePreview(int sender, DrawingPreview preview) {
+        if (fPreviewsSupported && !fClosed
+                && fQueue.offer(new Delivery(sender, preview.sender(), null,
+                        preview, 0, 0))) {
+            fQueuedPreviews.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the oldest preview waiting to be sent, to make room in the
+     * queue.
+     * 
+     * @return false if there is no preview in the queue.
+     */
+    private boolean dropOldestPreview() {
+        if (fQueuedPreviews.get() == 0) {
+            return false;
+        }
+        Iterator<Delivery> deliveries = fQueue.iterator();
+        while (deliveries.hasNext()) {
+            if (deliveries.next().fPreview != null) {
+                deliveries.remove();
+                fQueuedPreviews.decrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Has the client sent the server's commands since the last one it
+     * acknowledged before anything else, as when a follower's log has been
+     * replaced by its leader's. This never blocks.
+     */
+    public void resync() {
+        fResyncPending.set(true);
+        fQueue.offer(new Delivery(ClientSession.NO_SESSION, null, null, null,
+                0, 0));
+    }
+
+    /**
+     * Returns the number of commands waiting to be sent.
+     */
+    public int queueDepth() {
+        return fQueue.size();
+    }
+
+    /**
+     * Returns the time from the server accepting a command to the client's
+     * call returning with it.
+     */
+    public LatencyHistogram deliveryLatency() {
+        return fLatency;
+    }
+
+    /**
+     * Returns the number of remote calls to the client that failed.
+     */
+    public long failedDeliveries() {
+        return fFailedDeliveries.get();
+    }
+
+    /**
+     * Stops the dispatcher. Commands still in the queue are discarded.
+     */
+    public void close() {
+        fClosed = true;
+        fQueue.clear();
+
+        Thread thread = fThread;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        fThread = Thread.currentThread();
+
+        // Peers wait for their first snapshot, so are sent one even if there
+        // is nothing in it.
+        resync(fPeer != null);
+
+        List<Delivery> batch = new ArrayList<Delivery>(fMaxBatchSize);
+        try {
+            while (!fClosed) {
+                nextBatch(batch);
+                if (fResyncPending.getAndSet(false)) {
+                    resync(false);
+                }
+                // While the client is still behind, the commands wait in the
+                // log for the next snapshot, rather than leaving a gap.
+                boolean behind = fResyncPending.get();
+                List<String> senders = new ArrayList<String>(batch.size());
+                List<DrawingCommand> cmds = new ArrayList<DrawingCommand>(
+                        batch.size());
+                long[] accepted = new long[batch.size()];
+                long sequence = 0;
+                Map<String, DrawingPreview> previews = new LinkedHashMap<String, DrawingPreview>();
+
+                for (Delivery delivery : batch) {
+                    if (delivery.fPreview != null) {
+                        fQueuedPreviews.decrementAndGet();
+                    } else if (delivery.fCmd == null) {
+                        continue;
+                    }
+                    if (delivery.fCmd != null) {
+                        // Commands in the last snapshot are not sent again.
+                        if (behind || delivery.fSequence <= fAcknowledged) {
+                            continue;
+                        }
+                        sequence = delivery.fSequence;
+                    }
+                    // Don't send commands back to the client they came from.
+                    if (delivery.fSender == fSession) {
+                        continue;
+                    }
+                    if (delivery.fCmd != null) {
+                        accepted[cmds.size()] = delivery.fAcceptedNanos;
+                        senders.add(delivery.fSenderName);
+                        cmds.add(delivery.fCmd);
+                    } else {
+                        String sender = delivery.fPreview.sender();
+                        DrawingPreview earlier = previews.get(sender);
+                        previews.put(sender, earlier == null ? delivery.fPreview
+                                : earlier.coalesce(delivery.fPreview));
+                    }
+                }
+                batch.clear();
+
+                // Finished commands go first, so that a preview which ends a
+                // stroke arrives after the stroke itself.
+                if (sequence > 0) {
+                    if (send(senders, cmds, sequence)) {
+                        delivered(sequence);
+                        long now = System.nanoTime();
+                        for (int i = 0; i < cmds.size(); i++) {
+                            fLatency.record(now - accepted[i]);
+                            fMetrics.delivered(now - accepted[i]);
+                        }
+                    } else {
+                        fResyncPending.set(true);
+                    }
+                }
+                if (!previews.isEmpty()) {
+                    sendPreviews(new ArrayList<DrawingPreview>(previews
+                            .values()));
+                }
+            }
+        } catch (InterruptedException e) {
+            // Dispatcher has been closed.
+        }
+    }
+
+    /**
+     * Waits for at least one queued command, then keeps collecting commands
+     * until the batch is full or the linger time has passed. While the client
+     * is to be resynced, waits only for the resync delay, and may return an
+     * empty batch.
+     */
+    private void nextBatch(List<Delivery> batch) throws InterruptedException {
+        if (fResyncPending.get()) {
+            Delivery first = fQueue.poll(fResyncDelayMillis,
+                    TimeUnit.MILLISECONDS);
+            if (first == null) {
+                fResyncDelayMillis = Math.min(2 * fResyncDelayMillis,
+                        MAX_RESYNC_DELAY_MILLIS);
+                return;
+            }
+            batch.add(first);
+        } else {
+            batch.add(fQueue.take());
+        }
+        fQueue.drainTo(batch, fMaxBatchSize - batch.size());
+
+        long deadline = System.currentTimeMillis() + fMaxLingerMillis;
+        while (batch.size() < fMaxBatchSize) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            Delivery delivery = fQueue.poll(remaining, TimeUnit.MILLISECONDS);
+            if (delivery == null) {
+                break;
+            }
+            batch.add(delivery);
+            fQueue.drainTo(batch, fMaxBatchSize - batch.size());
+        }
+    }
+
+    /**
+     * Sends the client the server's commands since the last one it
+     * acknowledged, as one snapshot, with the checkpoint if those commands
+     * have been compacted. The snapshot is built on the dispatcher's thread,
+     * so broadcasts to other clients carry on while it is serialised and
+     * sent. Clients that predate snapshots are sent the commands in batches
+     * instead, without the checkpoint. If the client cannot be sent them, it
+     * is sent them again before the next batch.
+     * 
+     * @param always
+     *            Whether to send a snapshot even if there is nothing new.
+     */
+    private void resync(boolean always) {
+        DrawingSnapshot snapshot;
+        try {
+            snapshot = fServer.commandsSince(fAcknowledged);
+        } catch (RemoteException e) {
+            // The snapshot could not be built.
+            e.printStackTrace();
+            fResyncPending.set(true);
+            return;
+        }
+        if (!always && snapshot.size() == 0
+                && snapshot.encodedCheckpointImage() == null
+                && snapshot.sequence() == fAcknowledged) {
+            return;
+        }
+        try {
+            snapshot = withoutOwnCommands(snapshot);
+        } catch (Exception e) {
+            // Sent as it is; the client draws its own commands again.
+            e.printStackTrace();
+        }
+
+        try {
+            fClient.receiveSnapshotFromServer(snapshot);
+            delivered(snapshot.sequence());
+            return;
+        } catch (ServerException e) {
+            // The client is reachable but could not take the snapshot.
+            if (!isUnsupportedMethod(e)) {
+                failed();
+                e.printStackTrace();
+                fResyncPending.set(true);
+                return;
+            }
+        } catch (RemoteException e) {
+            failed();
+            e.printStackTrace();
+            fResyncPending.set(true);
+            return;
+        }
+
+        List<DrawingCommand> cmds;
+        try {
+            cmds = snapshot.commands();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        long first = snapshot.sequence() - cmds.size();
+        for (int i = 0; i < cmds.size() && !fClosed; i += fMaxBatchSize) {
+            int end = Math.min(i + fMaxBatchSize, cmds.size());
+            if (!send(null, cmds.subList(i, end), first + end)) {
+                fResyncPending.set(true);
+                return;
+            }
+            delivered(first + end);
+        }
+    }
+
+    /**
+     * Returns a snapshot without the client's own commands, which it has
+     * drawn already, reaching the same sequence number.
+     */
+    private DrawingSnapshot withoutOwnCommands(DrawingSnapshot snapshot)
+            throws IOException, ClassNotFoundException {
+        long last = snapshot.sequence();
+        long first = last - snapshot.size();
+        if (fOwnSequences.subSet(first, false, last, true).isEmpty()) {
+            return snapshot;
+        }
+
+        List<DrawingCommand> cmds = snapshot.commands();
+        List<DrawingCommand> others = new ArrayList<DrawingCommand>(
+                cmds.size());
+        for (int i = 0; i < cmds.size(); i++) {
+            if (!fOwnSequences.contains(first + i + 1)) {
+                others.add(cmds.get(i));
+            }
+        }
+        return new DrawingSnapshot(snapshot.encodedCheckpointImage(),
+                snapshot.checkpointCommandCount(), last, others,
+                fCompressSnapshot);
+    }
+
+    /**
+     * Records that the client has the commands up to a sequence number.
+     */
+    private void delivered(long sequence) {
+        fAcknowledged = sequence;
+        fFailingSinceMillis = 0;
+        fResyncDelayMillis = RESYNC_DELAY_MILLIS;
+        fOwnSequences.headSet(sequence, true).clear();
+    }
+
+    /**
+     * Sends commands to the client in a single call, with the sequence number
+     * reached, falling back to a call without it, or to one call per command,
+     * for clients that predate sequenced or batched delivery. A peer is also
+     * sent the senders, if they are known. An empty list is sent only to
+     * clients that take the sequence number.
+     * 
+     * @return true if the client received every command.
+     */
+    private boolean send(List<String> senders, List<DrawingCommand> cmds,
+            long sequence) {
+        if (cmds.isEmpty() && (fPeer != null || !fSequenceSupported)) {
+            return true;
+        }
+        try {
+            if (fPeer != null && senders != null) {
+                fPeer.receiveRelayedCommandsFromServer(senders,
+                        new ArrayList<DrawingCommand>(cmds));
+                return true;
+            }
+            if (fSequenceSupported) {
+                try {
+                    fClient.receiveSequencedCommandsFromServer(sequence,
+                            new ArrayList<DrawingCommand>(cmds));
+                    return true;
+                } catch (ServerException e) {
+                    if (!isUnsupportedMethod(e)) {
+                        throw e;
+                    }
+                    fSequenceSupported = false;
+                    if (cmds.isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+            if (fBatchSupported) {
+                try {
+                    fClient.receiveDrawingCommandsFromServer(
+                            new ArrayList<DrawingCommand>(cmds));
+                    return true;
+                } catch (ServerException e) {
+                    if (!isUnsupportedMethod(e)) {
+                        throw e;
+                    }
+                    fBatchSupported = false;
+                }
+            }
+            for (DrawingCommand cmd : cmds) {
+                fClient.receiveDrawingCommandFromServer(cmd);
+            }
+            return true;
+        } catch (RemoteException e) {
+            failed();
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Sends previews to the client, unless it predates previews.
+     */
+    private void sendPreviews(List<DrawingPreview> previews) {
+        try {
+            fClient.receivePreviewsFromServer(previews);
+            fFailingSinceMillis = 0;
+        } catch (ServerException e) {
+            if (isUnsupportedMethod(e)) {
+                fPreviewsSupported = false;
+            } else {
+                failed();
+                e.printStackTrace();
+            }
+        } catch (RemoteException e) {
+            failed();
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Counts a failed call to the client, and closes the dispatcher if calls
+     * have been failing for too long.
+     */
+    private void failed() {
+        fFailedDeliveries.incrementAndGet();
+        fMetrics.failed();
+
+        long now = System.currentTimeMillis();
+        if (fFailingSinceMillis == 0) {
+            fFailingSinceMillis = now;
+        } else if (now - fFailingSinceMillis > FAILURE_TIMEOUT_MILLIS) {
+            ServerLog.println("Client unreachable, disconnecting it.");
+            close();
+        }
+    }
+
+    /**
+     * Returns true if an exception shows that the client does not implement
+     * the remote method that was called. An older client rejects a method it
+     * does not know as an unmarshalling failure of the method hash, with no
+     * cause. Any other unmarshalling failure, such as a class the client could
+     * not load or a broken stream, is a failed call like any other, and the
+     * commands are sent again.
+     */
+    private static boolean isUnsupportedMethod(ServerException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof UnmarshalException
+                && cause.getCause() == null
+                && cause.getMessage() != null
+                && cause.getMessage().startsWith(UNRECOGNIZED_METHOD_HASH);
+    }
+}
@@ -0,0 +1,176 @@
+package server;
+
+import java.io.IOException;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
+
+import service_interface.DrawingRoomDirectory;
+import service_interface.DrawingServer;
+
+/**
+ * Hosts any number of named rooms in one server process. Each room is its own
+ * DrawingServerImpl, with its own monitor, command log, journal, clients and
+ * thread pool, so strokes in one room never wait on strokes in another. Rooms
+ * are created when first joined and last for the life of the process.
+ * 
+ * Each room's metrics are published over JMX under the room's name.
+ * 
+ * If the configuration names a cluster leader, every room follows the room
+ * of the same name on the leader's directory. A room is opened, which for a
+ * follower means waiting for the leader's history, without holding the
+ * directory's lock, so only clients joining that room wait for it.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingRoomDirectoryImpl extends UnicastRemoteObject implements
+        DrawingRoomDirectory {
+
+    // Room names double as journal directory names.
+    private static final Pattern ROOM_NAME = Pattern
+            .compile("[A-Za-z0-9_-]{1,64}");
+
+    private ServerConfiguration fConfiguration;
+    private ConcurrentMap<String, DrawingServerImpl> fRooms;
+
+    // Rooms being opened, each with a latch released once it is open or has
+    // failed to open. Guarded by the directory's monitor.
+    private Map<String, CountDownLatch> fOpening;
+
+    /**
+     * Creates a room directory and its default room.
+     * 
+     * @throws IOException
+     *             if the directory cannot be exported or the default room's
+     *             journal cannot be recovered.
+     */
+    public DrawingRoomDirectoryImpl(ServerConfiguration configuration)
+            throws IOException {
+        fConfiguration = configuration;
+        fRooms = new ConcurrentHashMap<String, DrawingServerImpl>();
+        fOpening = new HashMap<String, CountDownLatch>();
+        fRooms.put(DEFAULT_ROOM, openRoom(DEFAULT_ROOM));
+    }
+
+    /**
+     * Returns the default room.
+     */
+    public DrawingServerImpl defaultRoom() {
+        return fRooms.get(DEFAULT_ROOM);
+    }
+
+    @Override
+    public DrawingServer joinRoom(String room) throws RemoteException {
+        if (room == null || !ROOM_NAME.matcher(room).matches()) {
+            throw new IllegalArgumentException("Invalid room name " + room);
+        }
+
+        DrawingServerImpl server = fRooms.get(room);
+        if (server != null) {
+            return server;
+        }
+
+        // Joining an existing room takes no lock here. The first to join a
+        // new room opens it; others joining it meanwhile wait for it to open.
+        CountDownLatch opening;
+        boolean opener = false;
+        synchronized (this) {
+            server = fRooms.get(room);
+            if (server != null) {
+                return server;
+            }
+            opening = fOpening.get(room);
+            if (opening == null) {
+                if (fRooms.size() + fOpening.size() >= fConfiguration
+                        .maxRooms()) {
+                    throw new RemoteException("No more than "
+                            + fConfiguration.maxRooms() + " rooms allowed");
+                }
+                opening = new CountDownLatch(1);
+                fOpening.put(room, opening);
+                opener = true;
+            }
+        }
+
+        if (!opener) {
+            try {
+                opening.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted joining room " + room);
+            }
+            server = fRooms.get(room);
+            if (server == null) {
+                throw new RemoteException("Unable to open room " + room);
+            }
+            return server;
+        }
+
+        try {
+            server = openRoom(room);
+            ServerLog.println("Opened room " + room);
+            return server;
+        } catch (IOException e) {
+            throw new RemoteException("Unable to open room " + room, e);
+        } finally {
+            synchronized (this) {
+                if (server != null) {
+                    fRooms.put(room, server);
+                }
+                fOpening.remove(room);
+            }
+            opening.countDown();
+        }
+    }
+
+    /**
+     * Creates the server for a room and, in a cluster, makes it follow the
+     * leader's room.
+     */
+    private DrawingServerImpl openRoom(String room) throws IOException {
+        DrawingServerImpl server = new DrawingServerImpl(fConfiguration
+                .forRoom(room));
+
+        String leaderHost = fConfiguration.clusterLeaderHost();
+        if (leaderHost != null) {
+            try {
+                DrawingRoomDirectory leader = (DrawingRoomDirectory) LocateRegistry
+                        .getRegistry(leaderHost,
+                                fConfiguration.clusterLeaderPort()).lookup(
+                                "drawingrooms");
+                server.follow(leader.joinRoom(room));
+            } catch (NotBoundException e) {
+                throw new IOException("No drawing server at " + leaderHost, e);
+            }
+            ServerLog.println("Room " + room + " following " + leaderHost
+                    + ":" + fConfiguration.clusterLeaderPort());
+        }
+        server.fMetrics.register(room);
+        return server;
+    }
+
+    @Override
+    public List<String> roomNames() throws RemoteException {
+        return new ArrayList<String>(fRooms.keySet());
+    }
+
+    /**
+     * Syncs and closes the journal of every room, and withdraws its metrics.
+     */
+    public void close() {
+        for (DrawingServerImpl server : fRooms.values()) {
+            server.close();
+            server.fMetrics.unregister();
+        }
+    }
+}
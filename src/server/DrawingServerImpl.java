@@ -1,82 +1,741 @@
-package server;
-
-import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
-import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import service_interface.DrawingClient;
-import service_interface.DrawingCommand;
-import service_interface.DrawingServer;
-
-public class DrawingServerImpl extends UnicastRemoteObject implements
-        DrawingServer {
-
-    private ArrayList<DrawingClient> fClients = new ArrayList<DrawingClient>();
-    ArrayList<DrawingCommand> fCompletedDrawingCommands = new ArrayList<DrawingCommand>();
-    ExecutorService fThreadPool;
-
-    public DrawingServerImpl() throws RemoteException {
-        fThreadPool = Executors.newCachedThreadPool();
-    }
-
-    @Override
-    synchronized public void addDrawingClient(DrawingClient client)
-            throws RemoteException {
-        fClients.add(client);
-
-        for (DrawingCommand cmd : fCompletedDrawingCommands) {
-            fThreadPool.execute(new DrawingCommandDispatcher("", client, cmd));
-        }
-
-        System.out.println("Registered client " + client.getName());
-    }
-
-    @Override
-    synchronized public void removeDrawingClient(DrawingClient client)
-            throws RemoteException {
-        System.out.println("De-registering client.");
-        fClients.remove(client);
-    }
-
-    @Override
-    synchronized public void broadcastDrawingCommand(String sender,
-            DrawingCommand cmd) throws RemoteException {
-        System.out.println("Received command " + cmd.name() + " from " + sender);
-
-        fCompletedDrawingCommands.add(cmd);
-
-        for (DrawingClient client : fClients) {
-            fThreadPool.execute(new DrawingCommandDispatcher(sender, client,
-                    cmd));
-        }
-    }
-
-    /**
-     * @param args
-     */
-    public static void main(String[] args) {
-        try {
-            if (System.getSecurityManager() == null) {
-                System.setSecurityManager(new SecurityManager());
-            }
-
-            String registryHost = "localhost";
-            int registryPort = 1099;
-
-            if (args.length == 2) {
-                registryHost = args[0];
-                registryPort = Integer.parseInt(args[1]);
-            }
-
-            Registry r = LocateRegistry.getRegistry(registryHost, registryPort);
-            r.rebind("drawingserver", new DrawingServerImpl());
-            System.out.println("Bound drawing server");
-        } catch (RemoteException e) {
-            e.printStackTrace();
-        }
-    }
-}
+package server;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import service_interface.BoundedDrawingCommand;
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPeer;
+import service_interface.DrawingPreview;
+import service_interface.DrawingServer;
+import service_interface.DrawingSnapshot;
+import service_interface.PeerExecutor;
+
+/**
+ * Server for one shared drawing. A server either stands alone, or leads a
+ * cluster, or follows a leader. Alone or as a leader, it accepts commands in
+ * the order they are broadcast. A follower forwards commands broadcast by its
+ * own clients to its leader, and accepts commands only as the leader relays
+ * them back, so every node, and every client, sees the same order. Each node
+ * fans commands out to its own clients. A follower may itself be followed.
+ * 
+ * Accepted commands are numbered in the order they were accepted, counting
+ * those compacted into the checkpoint, so the command at index i of the log
+ * has sequence number checkpointCommandCount() + i + 1. A follower's log is a
+ * copy of its leader's, so the numbers are the same on every node. A client
+ * that lost its connection resumes from the last number it received, and is
+ * sent only the commands after it, unless they have been compacted.
+ * 
+ * Commands broadcast with an ID are accepted at most once: the leader keeps
+ * the highest ID accepted from each sender and ignores any command whose ID
+ * is not higher, such as a retry of a call that reached the server although
+ * its sender did not hear back. The ID of a sender that has not broadcast for
+ * COMMAND_ID_RETENTION_MILLIS, long after its last retry, is forgotten, as is
+ * that of a client that deregisters.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingServerImpl extends UnicastRemoteObject implements
+        DrawingServer, DrawingPeer {
+
+    // How long a follower waits for its leader's history before serving
+    // clients anyway.
+    private static final long FOLLOW_TIMEOUT_SECONDS = 30;
+
+    // How long the highest command ID accepted from a sender is kept after
+    // its last command.
+    private static final long COMMAND_ID_RETENTION_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * The highest command ID accepted from a sender, and when it was
+     * accepted.
+     */
+    static class LastCommandId {
+        long fId;
+        long fAcceptedMillis;
+
+        LastCommandId(long id, long acceptedMillis) {
+            fId = id;
+            fAcceptedMillis = acceptedMillis;
+        }
+    }
+
+    // Sessions of registered clients, indexed by remote reference and by
+    // name. Names are only ever asked of a client when it registers.
+    private Map<DrawingClient, ClientSession> fClients = new LinkedHashMap<DrawingClient, ClientSession>();
+    private Map<String, ClientSession> fSessionsByName = new HashMap<String, ClientSession>();
+    private int fNextSessionId = ClientSession.NO_SESSION + 1;
+    ArrayList<DrawingCommand> fCompletedDrawingCommands = new ArrayList<DrawingCommand>();
+    ExecutorService fThreadPool;
+    ServerConfiguration fConfiguration;
+
+    // Raster image of the commands compacted out of the log, or null if no
+    // compaction has taken place.
+    DrawingCheckpoint fCheckpoint;
+    boolean fCompacting;
+
+    // Counts the times the log has been replaced by a leader's snapshot, so
+    // that a compaction started on an older log is not applied to it.
+    long fLogGeneration;
+
+    // Names of clients with a preview in progress.
+    private Set<String> fPreviewingSenders = new HashSet<String>();
+
+    // Highest command ID accepted from each sender that gives its commands
+    // IDs, the least recently accepted first.
+    private Map<String, LastCommandId> fLastCommandIds = new LinkedHashMap<String, LastCommandId>();
+
+    // Durable record of accepted commands, or null if journalling is off.
+    CommandJournal fJournal;
+
+    // Name under which this server registers with its leader.
+    private String fName;
+
+    // The node this server follows, or null, and the executor that forwards
+    // commands and previews to it one at a time, in order.
+    private DrawingServer fLeader;
+    private PeerExecutor fLeaderExecutor;
+
+    // Released once a follower has installed its leader's history.
+    private CountDownLatch fFollowing;
+
+    // Published over JMX by the room directory.
+    DrawingServerMetrics fMetrics;
+
+    public DrawingServerImpl() throws IOException {
+        this(new ServerConfiguration());
+    }
+
+    /**
+     * Creates a drawing server. If the configuration names a journal
+     * directory, the shared drawing is first rebuilt from the journal.
+     * 
+     * @throws IOException
+     *             if the server cannot be exported or the journal cannot be
+     *             recovered.
+     */
+    public DrawingServerImpl(ServerConfiguration configuration)
+            throws IOException {
+        fConfiguration = configuration;
+        fThreadPool = configuration.dispatchExecutor().newExecutor();
+        fName = "node" + UUID.randomUUID();
+        fMetrics = new DrawingServerMetrics(this);
+
+        // A follower's history is its leader's, so only a leader journals.
+        File journalDirectory = configuration.journalDirectory();
+        if (journalDirectory != null
+                && configuration.clusterLeaderHost() == null) {
+            fJournal = new CommandJournal(journalDirectory,
+                    configuration.journalSegmentSize(),
+                    configuration.journalSyncIntervalMillis());
+            CommandJournal.Recovery recovery = fJournal.recover();
+            fCheckpoint = recovery.checkpoint();
+            fCompletedDrawingCommands.addAll(recovery.commands());
+            System.out.println("Recovered " + recovery.commands().size()
+                    + " commands from journal.");
+        }
+    }
+
+    /**
+     * Makes this server a follower of another node, and waits for the
+     * leader's history to arrive. Must be called before any client
+     * registers.
+     * 
+     * @param leader
+     *            The leader's server for the same drawing.
+     * @throws RemoteException
+     *             if the leader cannot be reached.
+     */
+    public void follow(DrawingServer leader) throws RemoteException {
+        synchronized (this) {
+            fLeader = leader;
+            fLeaderExecutor = new PeerExecutor(fThreadPool, 1);
+            fFollowing = new CountDownLatch(1);
+        }
+        leader.addDrawingClient(this);
+
+        try {
+            if (!fFollowing.await(FOLLOW_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Timed out waiting for the leader's history.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String getName() throws RemoteException {
+        return fName;
+    }
+
+    @Override
+    synchronized public void addDrawingClient(DrawingClient client)
+            throws RemoteException {
+        register(client, 0);
+    }
+
+    @Override
+    synchronized public void resumeDrawingClient(DrawingClient client,
+            long sequence) throws RemoteException {
+        register(client, sequence);
+    }
+
+    /**
+     * Registers a client that has the commands up to a sequence number, and
+     * starts its dispatcher. Must be called while holding the server monitor.
+     */
+    private void register(DrawingClient client, long sequence)
+            throws RemoteException {
+        String name = client.getName();
+        int id = fNextSessionId++;
+
+        // The new client's dispatcher sends the history the client lacks
+        // before anything broadcast after this point.
+        DrawingCommandDispatcher dispatcher = new DrawingCommandDispatcher(
+                client, id, this, sequence, fConfiguration, fMetrics);
+        ClientSession session = new ClientSession(id, name, client,
+                dispatcher);
+
+        // A client that registers again replaces its previous session.
+        endSession(fClients.get(client));
+        endSession(fSessionsByName.get(name));
+        fClients.put(client, session);
+        fSessionsByName.put(name, session);
+        fThreadPool.execute(dispatcher);
+
+        ServerLog.println("Registered client " + name + " as session " + id
+                + " from sequence " + sequence);
+    }
+
+    @Override
+    synchronized public void removeDrawingClient(DrawingClient client)
+            throws RemoteException {
+        ClientSession session = fClients.get(client);
+        if (session != null) {
+            ServerLog.println("De-registering client " + session.name());
+            endSession(session);
+            fLastCommandIds.remove(session.name());
+        }
+    }
+
+    @Override
+    synchronized public void broadcastDrawingCommand(final String sender,
+            final DrawingCommand cmd) throws RemoteException {
+        ServerLog.println("Received command " + cmd.name() + " from " + sender);
+
+        if (fLeader != null) {
+            // The command is accepted when the leader relays it back.
+            fLeaderExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        fLeader.broadcastDrawingCommand(sender, cmd);
+                    } catch (RemoteException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        } else {
+            accept(sender, cmd);
+        }
+    }
+
+    @Override
+    synchronized public void broadcastDrawingCommand(final String sender,
+            final long commandId, final DrawingCommand cmd)
+            throws RemoteException {
+        if (fLeader != null) {
+            // The leader decides whether the command is new.
+            ServerLog.println("Received command " + cmd.name() + " from "
+                    + sender);
+            fLeaderExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        fLeader.broadcastDrawingCommand(sender, commandId, cmd);
+                    } catch (RemoteException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        expireCommandIds(now);
+        LastCommandId lastId = fLastCommandIds.get(sender);
+        if (lastId != null && commandId <= lastId.fId) {
+            ServerLog.println("Ignored repeated command " + commandId
+                    + " from " + sender);
+            return;
+        }
+        // Put again, to move the sender to the end of the map.
+        fLastCommandIds.remove(sender);
+        fLastCommandIds.put(sender, new LastCommandId(commandId, now));
+        broadcastDrawingCommand(sender, cmd);
+    }
+
+    /**
+     * Forgets the command IDs of senders that have not broadcast for longer
+     * than the retention time. Must be called while holding the server
+     * monitor.
+     */
+    private void expireCommandIds(long now) {
+        Iterator<LastCommandId> ids = fLastCommandIds.values().iterator();
+        while (ids.hasNext()
+                && now - ids.next().fAcceptedMillis > COMMAND_ID_RETENTION_MILLIS) {
+            ids.remove();
+        }
+    }
+
+    @Override
+    public DrawingSnapshot commandsSince(long sequence) throws RemoteException {
+        byte[] checkpointImage = null;
+        long checkpointCount;
+        long last;
+        List<DrawingCommand> cmds;
+        synchronized (this) {
+            checkpointCount = checkpointCommandCount();
+            last = lastSequence();
+            if (sequence >= checkpointCount && sequence <= last) {
+                cmds = new ArrayList<DrawingCommand>(fCompletedDrawingCommands
+                        .subList((int) (sequence - checkpointCount),
+                                fCompletedDrawingCommands.size()));
+            } else {
+                if (checkpointCount > 0) {
+                    checkpointImage = fCheckpoint.encodedImage();
+                }
+                cmds = new ArrayList<DrawingCommand>(fCompletedDrawingCommands);
+            }
+        }
+
+        // Serialise the commands outside the monitor, as a dispatcher does.
+        try {
+            return new DrawingSnapshot(checkpointImage,
+                    checkpointImage == null ? 0 : checkpointCount, last, cmds,
+                    fConfiguration.compressSnapshots());
+        } catch (IOException e) {
+            throw new RemoteException("Unable to build drawing snapshot", e);
+        }
+    }
+
+    /**
+     * Appends a command to the log and journal and queues it for every
+     * client but its sender. Must be called while holding the server monitor.
+     */
+    private void accept(String sender, DrawingCommand cmd) {
+        long accepted = System.nanoTime();
+        fCompletedDrawingCommands.add(cmd);
+        long sequence = lastSequence();
+        if (fJournal != null) {
+            try {
+                fJournal.append(cmd);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // The finished command ends the sender's preview, if it had one. A
+        // follower leaves that to its leader.
+        int id = sessionId(sender);
+        boolean endPreview = fPreviewingSenders.remove(sender)
+                && fLeader == null;
+
+        Iterator<ClientSession> sessions = fClients.values().iterator();
+        while (sessions.hasNext()) {
+            ClientSession session = sessions.next();
+            if (!session.dispatcher().enqueue(id, sender, cmd, sequence,
+                    accepted)) {
+                // The client's queue overflowed under the Disconnect policy.
+                sessions.remove();
+                fSessionsByName.remove(session.name());
+            } else if (endPreview) {
+                session.dispatcher().enqueuePreview(id,
+                        DrawingPreview.ended(sender));
+            }
+        }
+        fMetrics.broadcast(System.nanoTime() - accepted);
+
+        int threshold = fConfiguration.checkpointThreshold();
+        if (threshold > 0 && fCompletedDrawingCommands.size() >= threshold
+                && !fCompacting) {
+            startCompaction();
+        }
+    }
+
+    @Override
+    synchronized public void broadcastDrawingPreview(String sender,
+            DrawingPreview preview) throws RemoteException {
+        fPreviewingSenders.add(sender);
+        if (fLeader != null) {
+            forwardPreview(sender, preview);
+        } else {
+            fanOutPreview(preview);
+        }
+    }
+
+    @Override
+    synchronized public void receiveDrawingCommandFromServer(
+            DrawingCommand cmd) throws RemoteException {
+        accept(null, cmd);
+    }
+
+    @Override
+    synchronized public void receiveDrawingCommandsFromServer(
+            List<DrawingCommand> cmds) throws RemoteException {
+        for (DrawingCommand cmd : cmds) {
+            accept(null, cmd);
+        }
+    }
+
+    @Override
+    synchronized public void receiveSequencedCommandsFromServer(
+            long sequence, List<DrawingCommand> cmds) throws RemoteException {
+        // Commands relayed by a leader come with their senders; this is only
+        // used for history sent in batches.
+        receiveDrawingCommandsFromServer(cmds);
+    }
+
+    @Override
+    synchronized public void receiveRelayedCommandsFromServer(
+            List<String> senders, List<DrawingCommand> cmds)
+            throws RemoteException {
+        for (int i = 0; i < cmds.size(); i++) {
+            accept(senders.get(i), cmds.get(i));
+        }
+    }
+
+    @Override
+    public void receiveSnapshotFromServer(DrawingSnapshot snapshot)
+            throws RemoteException {
+        List<DrawingCommand> cmds;
+        DrawingCheckpoint checkpoint = null;
+        try {
+            cmds = snapshot.commands();
+            if (snapshot.encodedCheckpointImage() != null) {
+                checkpoint = DrawingCheckpoint.decode(
+                        snapshot.encodedCheckpointImage(),
+                        snapshot.checkpointCommandCount());
+            }
+        } catch (IOException e) {
+            throw new RemoteException("Unable to read drawing snapshot", e);
+        } catch (ClassNotFoundException e) {
+            throw new RemoteException("Unable to read drawing snapshot", e);
+        }
+
+        synchronized (this) {
+            long first = snapshot.sequence() - cmds.size();
+            long last = lastSequence();
+            if (checkpoint == null && first > 0) {
+                // The commands the leader failed to relay, which follow on
+                // from the log, so only the new ones are accepted.
+                if (first > last) {
+                    System.err.println("Commands from the leader after "
+                            + first + " do not follow on from " + last);
+                    return;
+                }
+                for (int i = (int) (last - first); i < cmds.size(); i++) {
+                    accept(null, cmds.get(i));
+                }
+                ServerLog.println("Received "
+                        + Math.max(0, snapshot.sequence() - last)
+                        + " missed commands from leader.");
+            } else {
+                fLogGeneration++;
+                fCheckpoint = checkpoint;
+                fCompletedDrawingCommands.clear();
+                fCompletedDrawingCommands.addAll(cmds);
+                ServerLog.println("Received " + cmds.size()
+                        + " commands from leader.");
+
+                // Clients may have commands the new log does not.
+                for (ClientSession session : fClients.values()) {
+                    session.dispatcher().resync();
+                }
+            }
+        }
+        if (fFollowing != null) {
+            fFollowing.countDown();
+        }
+    }
+
+    @Override
+    synchronized public void receivePreviewsFromServer(
+            List<DrawingPreview> previews) throws RemoteException {
+        for (DrawingPreview preview : previews) {
+            fanOutPreview(preview);
+        }
+    }
+
+    /**
+     * Queues a preview for every client but its sender. Must be called while
+     * holding the server monitor.
+     */
+    private void fanOutPreview(DrawingPreview preview) {
+        int id = sessionId(preview.sender());
+        for (ClientSession session : fClients.values()) {
+            session.dispatcher().enqueuePreview(id, preview);
+        }
+    }
+
+    /**
+     * Forwards a preview to the leader, which relays it to every node. Must
+     * be called while holding the server monitor.
+     */
+    private void forwardPreview(final String sender,
+            final DrawingPreview preview) {
+        fLeaderExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    fLeader.broadcastDrawingPreview(sender, preview);
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the session ID of the registered client with the given name, or
+     * NO_SESSION if there is none. Must be called while holding the server
+     * monitor.
+     */
+    private int sessionId(String name) {
+        ClientSession session = fSessionsByName.get(name);
+        return session == null ? ClientSession.NO_SESSION : session.id();
+    }
+
+    /**
+     * Deregisters a session and closes its dispatcher. If the client was
+     * part way through a command, the other clients are told to discard its
+     * preview. Must be called while holding the server monitor.
+     * 
+     * @param session
+     *            The session to end, or null.
+     */
+    private void endSession(ClientSession session) {
+        if (session == null) {
+            return;
+        }
+        fClients.remove(session.client());
+        fSessionsByName.remove(session.name());
+        session.dispatcher().close();
+
+        if (fPreviewingSenders.remove(session.name())) {
+            DrawingPreview ended = DrawingPreview.ended(session.name());
+            if (fLeader != null) {
+                forwardPreview(session.name(), ended);
+            } else {
+                fanOutPreview(ended);
+            }
+        }
+    }
+
+    /**
+     * Returns the sessions of the registered clients.
+     */
+    synchronized List<ClientSession> sessions() {
+        return new ArrayList<ClientSession>(fClients.values());
+    }
+
+    /**
+     * Returns a copy of the log, less the commands in the checkpoint.
+     */
+    synchronized List<DrawingCommand> history() {
+        return new ArrayList<DrawingCommand>(fCompletedDrawingCommands);
+    }
+
+    /**
+     * Returns the number of commands drawn into the checkpoint.
+     */
+    synchronized long checkpointCommandCount() {
+        return fCheckpoint == null ? 0 : fCheckpoint.commandCount();
+    }
+
+    /**
+     * Returns the sequence number of the last command accepted, or zero if
+     * there is none.
+     */
+    synchronized long lastSequence() {
+        return checkpointCommandCount() + fCompletedDrawingCommands.size();
+    }
+
+    /**
+     * Syncs and closes the journal, if there is one.
+     */
+    void close() {
+        if (fJournal != null) {
+            fJournal.close();
+        }
+    }
+
+    /**
+     * Folds all but the newest commands in the log into a new checkpoint. The
+     * image is drawn on the thread pool; the log and checkpoint are only
+     * swapped, under the server monitor, once it is ready. Must be called
+     * while holding the server monitor.
+     */
+    private void startCompaction() {
+        final DrawingCheckpoint base = fCheckpoint;
+        Rectangle bounds = base == null ? new Rectangle(
+                fConfiguration.checkpointWidth(),
+                fConfiguration.checkpointHeight()) : base.bounds();
+        int count = foldableCommands(fCompletedDrawingCommands.size()
+                - fConfiguration.checkpointTail(), bounds);
+        if (count <= 0) {
+            return;
+        }
+
+        final List<DrawingCommand> oldest = new ArrayList<DrawingCommand>(
+                fCompletedDrawingCommands.subList(0, count));
+        final long generation = fLogGeneration;
+        fCompacting = true;
+
+        fThreadPool.execute(new Runnable() {
+            public void run() {
+                DrawingCheckpoint checkpoint = null;
+                try {
+                    if (base == null) {
+                        checkpoint = DrawingCheckpoint.empty(
+                                fConfiguration.checkpointWidth(),
+                                fConfiguration.checkpointHeight()).fold(oldest);
+                    } else {
+                        checkpoint = base.fold(oldest);
+                    }
+                    if (fJournal != null) {
+                        fJournal.saveCheckpoint(checkpoint);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                finishCompaction(checkpoint, oldest.size(), generation);
+            }
+        });
+    }
+
+    /**
+     * Returns how many of the oldest commands in the log, up to a limit, may
+     * be folded into a checkpoint image covering the given bounds. Folding
+     * stops at the first command not known to lie wholly inside them, which
+     * stays in the log as a command, as does everything after it, so that
+     * nothing drawn outside the image is lost. Must be called while holding
+     * the server monitor.
+     */
+    private int foldableCommands(int limit, Rectangle bounds) {
+        for (int i = 0; i < limit; i++) {
+            DrawingCommand cmd = fCompletedDrawingCommands.get(i);
+            if (!(cmd instanceof BoundedDrawingCommand)) {
+                return i;
+            }
+            Rectangle drawn = ((BoundedDrawingCommand) cmd).bounds();
+            if (!drawn.isEmpty() && !bounds.contains(drawn)) {
+                return i;
+            }
+        }
+        return Math.max(0, limit);
+    }
+
+    /**
+     * Installs a new checkpoint and drops the commands folded into it from
+     * the head of the log. Commands are only ever appended while a compaction
+     * is running, so the folded commands are still the oldest in the log,
+     * unless a snapshot from the leader has replaced the log meanwhile, in
+     * which case the checkpoint is discarded.
+     * 
+     * @param checkpoint
+     *            The new checkpoint, or null if compaction failed.
+     * @param count
+     *            The number of commands folded into the checkpoint.
+     * @param generation
+     *            The generation of the log the commands were taken from.
+     */
+    synchronized void finishCompaction(DrawingCheckpoint checkpoint,
+            int count, long generation) {
+        if (checkpoint != null && generation != fLogGeneration) {
+            ServerLog.println("Discarded compaction of " + count
+                    + " commands, the log was replaced meanwhile.");
+        } else if (checkpoint != null) {
+            fCheckpoint = checkpoint;
+            fCompletedDrawingCommands.subList(0, count).clear();
+            ServerLog.println("Compacted " + count + " commands, "
+                    + checkpoint.commandCount() + " in checkpoint.");
+        }
+        fCompacting = false;
+    }
+
+    /**
+     * @param args
+     *            Optionally the RMI registry host and port, followed by the
+     *            name of a server properties file.
+     */
+    public static void main(String[] args) {
+        try {
+            if (System.getSecurityManager() == null) {
+                System.setSecurityManager(new SecurityManager());
+            }
+
+            String registryHost = "localhost";
+            int registryPort = 1099;
+            String propertiesFileName = null;
+
+            if (args.length >= 2) {
+                registryHost = args[0];
+                registryPort = Integer.parseInt(args[1]);
+            }
+            if (args.length >= 3) {
+                propertiesFileName = args[2];
+            }
+
+            ServerConfiguration configuration = ServerConfiguration
+                    .load(propertiesFileName);
+
+            final DrawingRoomDirectoryImpl rooms = new DrawingRoomDirectoryImpl(
+                    configuration);
+
+            // Serve clients over NIO too, if configured.
+            NioDrawingServer nio = null;
+            if (configuration.nioPort() > 0) {
+                nio = new NioDrawingServer(rooms, configuration.nioPort(),
+                        configuration);
+                new Thread(nio, "nio-transport").start();
+                System.out.println("Serving NIO clients on port " + nio.port());
+            }
+            final NioDrawingServer nioServer = nio;
+
+            // Close client connections and sync the journals on shutdown.
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    if (nioServer != null) {
+                        nioServer.close();
+                    }
+                    rooms.close();
+                }
+            });
+
+            // Clients that do not name a room share the default room.
+            Registry r = LocateRegistry.getRegistry(registryHost, registryPort);
+            r.rebind("drawingserver", rooms.defaultRoom());
+            r.rebind("drawingrooms", rooms);
+            System.out.println("Bound drawing server");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
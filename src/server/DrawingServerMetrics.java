@@ -0,0 +1,200 @@
+package server;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of one drawing server, published over JMX. The server and its
+ * dispatchers record into it as they go; the rest is read from the server
+ * when asked for, holding its monitor only long enough to copy what is
+ * needed.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingServerMetrics implements DrawingServerMetricsMXBean {
+
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private DrawingServerImpl fServer;
+    private RateMeter fBroadcasts = new RateMeter(RATE_WINDOW_SECONDS);
+    private LatencyHistogram fFanOut = new LatencyHistogram();
+    private LatencyHistogram fDelivery = new LatencyHistogram();
+    private AtomicLong fFailedDeliveries = new AtomicLong();
+    private ObjectName fName;
+
+    public DrawingServerMetrics(DrawingServerImpl server) {
+        fServer = server;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under the name of
+     * a room. A failure to register is reported, but is not fatal.
+     */
+    public void register(String room) {
+        try {
+            ObjectName name = new ObjectName("rmipaint:type=DrawingRoom,name="
+                    + room);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    name);
+            fName = name;
+        } catch (JMException e) {
+            System.err.println("Unable to publish metrics of room " + room
+                    + ": " + e);
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if registered.
+     */
+    public void unregister() {
+        if (fName == null) {
+            return;
+        }
+        try {
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            mbeans.unregisterMBean(fName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        fName = null;
+    }
+
+    /**
+     * Records a command accepted and queued for every client, and how long
+     * that took.
+     */
+    void broadcast(long fanOutNanos) {
+        fBroadcasts.mark();
+        fFanOut.record(fanOutNanos);
+    }
+
+    /**
+     * Records the delivery of a command to a client.
+     */
+    void delivered(long latencyNanos) {
+        fDelivery.record(latencyNanos);
+    }
+
+    /**
+     * Records a failed remote call to a client.
+     */
+    void failed() {
+        fFailedDeliveries.incrementAndGet();
+    }
+
+    @Override
+    public int getConnectedClients() {
+        return fServer.sessions().size();
+    }
+
+    @Override
+    public Map<String, Integer> getClientQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<String, Integer>();
+        for (ClientSession session : fServer.sessions()) {
+            depths.put(session.name(), session.dispatcher().queueDepth());
+        }
+        return depths;
+    }
+
+    @Override
+    public Map<String, Double> getClientDeliveryLatencyP99Millis() {
+        Map<String, Double> latencies = new LinkedHashMap<String, Double>();
+        for (ClientSession session : fServer.sessions()) {
+            latencies.put(session.name(), session.dispatcher()
+                    .deliveryLatency().percentileMillis(0.99));
+        }
+        return latencies;
+    }
+
+    @Override
+    public Map<String, Long> getClientFailedDeliveries() {
+        Map<String, Long> failures = new LinkedHashMap<String, Long>();
+        for (ClientSession session : fServer.sessions()) {
+            failures.put(session.name(), session.dispatcher()
+                    .failedDeliveries());
+        }
+        return failures;
+    }
+
+    @Override
+    public long getCommandsBroadcast() {
+        return fBroadcasts.total();
+    }
+
+    @Override
+    public double getBroadcastsPerSecond() {
+        return fBroadcasts.perSecond();
+    }
+
+    @Override
+    public LatencySummary getFanOutDuration() {
+        return fFanOut.summary();
+    }
+
+    @Override
+    public LatencySummary getDeliveryLatency() {
+        return fDelivery.summary();
+    }
+
+    @Override
+    public long getFailedDeliveries() {
+        return fFailedDeliveries.get();
+    }
+
+    @Override
+    public int getHistoryCommands() {
+        return fServer.history().size();
+    }
+
+    @Override
+    public long getHistoryBytes() {
+        final long[] count = new long[1];
+        OutputStream counter = new OutputStream() {
+            public void write(int b) {
+                count[0]++;
+            }
+
+            public void write(byte[] b, int off, int len) {
+                count[0] += len;
+            }
+        };
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(counter);
+            out.writeObject(fServer.history());
+            out.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        }
+        return count[0];
+    }
+
+    @Override
+    public long getCheckpointCommands() {
+        return fServer.checkpointCommandCount();
+    }
+
+    @Override
+    public long getLogMessagesDropped() {
+        return ServerLog.dropped();
+    }
+
+    @Override
+    public void resetLatencies() {
+        fFanOut.reset();
+        fDelivery.reset();
+        for (ClientSession session : fServer.sessions()) {
+            session.dispatcher().deliveryLatency().reset();
+        }
+    }
+}
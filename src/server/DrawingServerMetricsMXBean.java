@@ -0,0 +1,92 @@
+package server;
+
+import java.util.Map;
+
+/**
+ * Management interface of a drawing server, one per room, registered with
+ * the platform MBean server as rmipaint:type=DrawingRoom,name=<room>. The
+ * per-client attributes are keyed by client name, so a client that is
+ * holding up a room can be picked out by its queue depth or latency.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface DrawingServerMetricsMXBean {
+
+    /**
+     * Returns the number of registered clients.
+     */
+    public int getConnectedClients();
+
+    /**
+     * Returns the number of commands waiting to be sent to each client.
+     */
+    public Map<String, Integer> getClientQueueDepths();
+
+    /**
+     * Returns the 99th percentile delivery latency of each client, in
+     * milliseconds.
+     */
+    public Map<String, Double> getClientDeliveryLatencyP99Millis();
+
+    /**
+     * Returns the number of failed deliveries to each client.
+     */
+    public Map<String, Long> getClientFailedDeliveries();
+
+    /**
+     * Returns the number of commands accepted since the server started.
+     */
+    public long getCommandsBroadcast();
+
+    /**
+     * Returns the mean number of commands accepted per second over the last
+     * ten seconds.
+     */
+    public double getBroadcastsPerSecond();
+
+    /**
+     * Returns how long accepting a command and queueing it for every client
+     * takes, while holding the server monitor.
+     */
+    public LatencySummary getFanOutDuration();
+
+    /**
+     * Returns the time from a command being accepted to a client's call
+     * returning with it, over all clients.
+     */
+    public LatencySummary getDeliveryLatency();
+
+    /**
+     * Returns the number of remote calls to clients that failed.
+     */
+    public long getFailedDeliveries();
+
+    /**
+     * Returns the number of commands in the log, not counting those drawn
+     * into the checkpoint.
+     */
+    public int getHistoryCommands();
+
+    /**
+     * Returns the serialised size of the log in bytes. The log is serialised
+     * to measure it, so this is costly for a long log.
+     */
+    public long getHistoryBytes();
+
+    /**
+     * Returns the number of commands drawn into the checkpoint.
+     */
+    public long getCheckpointCommands();
+
+    /**
+     * Returns the number of log messages dropped because the server log's
+     * queue was full. The log is shared by every room.
+     */
+    public long getLogMessagesDropped();
+
+    /**
+     * Forgets the fan-out and delivery latencies recorded so far.
+     */
+    public void resetLatencies();
+}
@@ -0,0 +1,108 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations, cheap enough to record into on every delivery.
+ * Durations are counted in buckets whose bounds double, from one microsecond
+ * up to about an hour, so percentiles are exact to within a factor of two.
+ * Recording takes no lock, so a histogram may be shared by many threads.
+ * 
+ * @author Andrew
+ * 
+ */
+public class LatencyHistogram {
+
+    // Bucket i counts durations of less than 2^i microseconds that do not
+    // fit in bucket i - 1. The last bucket takes everything longer.
+    private static final int BUCKETS = 32;
+
+    private AtomicLongArray fBuckets = new AtomicLongArray(BUCKETS);
+    private AtomicLong fCount = new AtomicLong();
+    private AtomicLong fTotalNanos = new AtomicLong();
+    private AtomicLong fMaxNanos = new AtomicLong();
+
+    /**
+     * Records a duration.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        fBuckets.incrementAndGet(bucket);
+        fCount.incrementAndGet();
+        fTotalNanos.addAndGet(nanos);
+
+        long max = fMaxNanos.get();
+        while (nanos > max && !fMaxNanos.compareAndSet(max, nanos)) {
+            max = fMaxNanos.get();
+        }
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     */
+    public long count() {
+        return fCount.get();
+    }
+
+    /**
+     * Returns the upper bound, in milliseconds, of the bucket holding the
+     * given fraction of recorded durations, or zero if none were recorded.
+     * 
+     * @param fraction
+     *            between 0 and 1, e.g. 0.99 for the 99th percentile.
+     */
+    public double percentileMillis(double fraction) {
+        long count = fCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += fBuckets.get(i);
+            if (seen >= rank) {
+                return Math.min((1L << i) / 1000.0, maxMillis());
+            }
+        }
+        return maxMillis();
+    }
+
+    /**
+     * Returns the mean recorded duration in milliseconds.
+     */
+    public double meanMillis() {
+        long count = fCount.get();
+        return count == 0 ? 0 : fTotalNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * Returns the longest recorded duration in milliseconds.
+     */
+    public double maxMillis() {
+        return fMaxNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the histogram's statistics, in the form published over JMX.
+     */
+    public LatencySummary summary() {
+        return new LatencySummary(count(), meanMillis(),
+                percentileMillis(0.5), percentileMillis(0.9),
+                percentileMillis(0.99), maxMillis());
+    }
+
+    /**
+     * Forgets every recorded duration. Durations recorded while the reset is
+     * in progress may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            fBuckets.set(i, 0);
+        }
+        fCount.set(0);
+        fTotalNanos.set(0);
+        fMaxNanos.set(0);
+    }
+}
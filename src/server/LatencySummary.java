@@ -0,0 +1,56 @@
+package server;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Statistics of a LatencyHistogram at one moment. Published over JMX as a
+ * composite value, so the getters' names are those shown by JMX consoles.
+ * 
+ * @author Andrew
+ * 
+ */
+public class LatencySummary {
+
+    private long fCount;
+    private double fMeanMillis;
+    private double fP50Millis;
+    private double fP90Millis;
+    private double fP99Millis;
+    private double fMaxMillis;
+
+    @ConstructorProperties( { "count", "meanMillis", "p50Millis", "p90Millis",
+            "p99Millis", "maxMillis" })
+    public LatencySummary(long count, double meanMillis, double p50Millis,
+            double p90Millis, double p99Millis, double maxMillis) {
+        fCount = count;
+        fMeanMillis = meanMillis;
+        fP50Millis = p50Millis;
+        fP90Millis = p90Millis;
+        fP99Millis = p99Millis;
+        fMaxMillis = maxMillis;
+    }
+
+    public long getCount() {
+        return fCount;
+    }
+
+    public double getMeanMillis() {
+        return fMeanMillis;
+    }
+
+    public double getP50Millis() {
+        return fP50Millis;
+    }
+
+    public double getP90Millis() {
+        return fP90Millis;
+    }
+
+    public double getP99Millis() {
+        return fP99Millis;
+    }
+
+    public double getMaxMillis() {
+        return fMaxMillis;
+    }
+}
@@ -0,0 +1,310 @@
+package server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import service_interface.DrawingClient;
+import service_interface.DrawingCommand;
+import service_interface.DrawingPreview;
+import service_interface.DrawingServer;
+import service_interface.DrawingSnapshot;
+import service_interface.NioFrames;
+
+/**
+ * The server's end of a drawing client's NIO connection. To the rest of the
+ * server it is an ordinary DrawingClient: its dispatcher calls it to send
+ * commands, and it encodes each call as a frame and queues it for the
+ * selector thread to write. Frames read from the connection are turned into
+ * calls on the DrawingServer for the client's room.
+ * 
+ * Each connection buffers at most a configured number of unwritten bytes;
+ * beyond that its dispatcher waits, so a slow client fills its own queue
+ * rather than the server's memory. The wait is on a lock rather than the
+ * connection's monitor, so that a dispatcher on a virtual thread releases
+ * its carrier thread while it waits.
+ * 
+ * @author Andrew
+ * 
+ */
+public class NioClientConnection implements DrawingClient {
+
+    private NioDrawingServer fTransport;
+    private SocketChannel fChannel;
+    private SelectionKey fKey;
+    private Executor fInbound;
+    private int fMaxFrameSize;
+    private int fMaxPendingBytes;
+
+    // Set by the REGISTER message.
+    private String fName;
+    private DrawingServer fServer;
+
+    // Frame being read: its length field, then its body once the length is
+    // known.
+    private ByteBuffer fLength;
+    private ByteBuffer fFrame;
+
+    // Frames waiting to be written, and their total unwritten size, guarded
+    // by fLock. fDrained is signalled whenever frames are written.
+    private ArrayDeque<ByteBuffer> fOutbound;
+    private long fPendingBytes;
+    private boolean fClosed;
+    private ReentrantLock fLock;
+    private Condition fDrained;
+
+    public NioClientConnection(NioDrawingServer transport,
+            SocketChannel channel, SelectionKey key, Executor inbound,
+            int maxFrameSize, int maxPendingBytes) {
+        fTransport = transport;
+        fChannel = channel;
+        fKey = key;
+        fInbound = inbound;
+        fMaxFrameSize = maxFrameSize;
+        fMaxPendingBytes = maxPendingBytes;
+        fLength = ByteBuffer.allocate(NioFrames.LENGTH_SIZE);
+        fOutbound = new ArrayDeque<ByteBuffer>();
+        fLock = new ReentrantLock();
+        fDrained = fLock.newCondition();
+    }
+
+    @Override
+    public String getName() throws RemoteException {
+        return fName;
+    }
+
+    @Override
+    public void receiveDrawingCommandFromServer(DrawingCommand cmd)
+            throws RemoteException {
+        send(NioFrames.COMMAND, cmd);
+    }
+
+    @Override
+    public void receiveDrawingCommandsFromServer(List<DrawingCommand> cmds)
+            throws RemoteException {
+        send(NioFrames.COMMANDS, cmds);
+    }
+
+    @Override
+    public void receiveSequencedCommandsFromServer(long sequence,
+            List<DrawingCommand> cmds) throws RemoteException {
+        send(NioFrames.SEQUENCED_COMMANDS, sequence, cmds);
+    }
+
+    @Override
+    public void receiveSnapshotFromServer(DrawingSnapshot snapshot)
+            throws RemoteException {
+        send(NioFrames.SNAPSHOT, snapshot);
+    }
+
+    @Override
+    public void receivePreviewsFromServer(List<DrawingPreview> previews)
+            throws RemoteException {
+        send(NioFrames.PREVIEWS, previews);
+    }
+
+    /**
+     * Reads whatever is available from the connection, handing each complete
+     * frame to the transport. Called on the selector thread.
+     * 
+     * @throws IOException
+     *             if the connection has closed or sent a malformed frame.
+     */
+    void read() throws IOException {
+        while (true) {
+            if (fFrame == null) {
+                if (fChannel.read(fLength) < 0) {
+                    throw new EOFException();
+                }
+                if (fLength.hasRemaining()) {
+                    return;
+                }
+                fLength.flip();
+                int length = fLength.getInt();
+                fLength.clear();
+                NioFrames.checkLength(length, fMaxFrameSize);
+                fFrame = ByteBuffer.allocate(length);
+            }
+
+            if (fChannel.read(fFrame) < 0) {
+                throw new EOFException();
+            }
+            if (fFrame.hasRemaining()) {
+                return;
+            }
+            fTransport.received(this, new NioFrames.Frame(fFrame.array()));
+            fFrame = null;
+        }
+    }
+
+    /**
+     * Writes as many queued frames as the connection will take, in one
+     * gathering write. Called on the selector thread.
+     * 
+     * @throws IOException
+     *             if the connection has closed.
+     */
+    void write() throws IOException {
+        fLock.lock();
+        try {
+            if (!fOutbound.isEmpty()) {
+                ByteBuffer[] frames = fOutbound
+                        .toArray(new ByteBuffer[fOutbound.size()]);
+                fPendingBytes -= fChannel.write(frames);
+                while (!fOutbound.isEmpty()
+                        && !fOutbound.peek().hasRemaining()) {
+                    fOutbound.poll();
+                }
+            }
+            if (fOutbound.isEmpty()) {
+                fKey.interestOps(SelectionKey.OP_READ);
+            }
+            fDrained.signalAll();
+        } finally {
+            fLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the executor that carries out the connection's messages, one at
+     * a time in the order they arrived.
+     */
+    Executor inbound() {
+        return fInbound;
+    }
+
+    /**
+     * Carries out a message received from the client. Called on the
+     * connection's inbound executor, in the order messages arrived.
+     * 
+     * @throws IOException
+     *             if the message is malformed.
+     */
+    void handle(NioFrames.Frame frame) throws IOException,
+            ClassNotFoundException {
+        ObjectInputStream in = frame.fields();
+        switch (frame.type()) {
+        case NioFrames.REGISTER:
+            fName = (String) in.readObject();
+            fServer = fTransport.joinRoom((String) in.readObject());
+            send(NioFrames.FRAME_LIMIT, fMaxFrameSize);
+            fServer.addDrawingClient(this);
+            break;
+        case NioFrames.RESUME:
+            fName = (String) in.readObject();
+            fServer = fTransport.joinRoom((String) in.readObject());
+            send(NioFrames.FRAME_LIMIT, fMaxFrameSize);
+            fServer.resumeDrawingClient(this, (Long) in.readObject());
+            break;
+        case NioFrames.DEREGISTER:
+            if (fServer != null) {
+                fServer.removeDrawingClient(this);
+            }
+            break;
+        case NioFrames.BROADCAST_COMMAND:
+            registeredServer().broadcastDrawingCommand(
+                    (String) in.readObject(), (DrawingCommand) in.readObject());
+            break;
+        case NioFrames.BROADCAST_IDENTIFIED_COMMAND:
+            registeredServer().broadcastDrawingCommand(
+                    (String) in.readObject(), (Long) in.readObject(),
+                    (DrawingCommand) in.readObject());
+            break;
+        case NioFrames.BROADCAST_PREVIEW:
+            registeredServer().broadcastDrawingPreview(
+                    (String) in.readObject(), (DrawingPreview) in.readObject());
+            break;
+        default:
+            throw new IOException("Unknown message type " + frame.type());
+        }
+    }
+
+    /**
+     * Closes the connection. Frames not yet written are discarded, and a
+     * dispatcher waiting to send is released.
+     */
+    void close() {
+        fLock.lock();
+        try {
+            if (fClosed) {
+                return;
+            }
+            fClosed = true;
+            fOutbound.clear();
+            fPendingBytes = 0;
+            fDrained.signalAll();
+        } finally {
+            fLock.unlock();
+        }
+
+        fKey.cancel();
+        try {
+            fChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Deregisters the client from its room, if it registered. Called on the
+     * connection's inbound executor once the connection has closed.
+     */
+    void deregister() {
+        if (fServer != null) {
+            try {
+                fServer.removeDrawingClient(this);
+            } catch (RemoteException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private DrawingServer registeredServer() throws IOException {
+        if (fServer == null) {
+            throw new IOException("Client has not registered");
+        }
+        return fServer;
+    }
+
+    /**
+     * Queues a message for the selector thread to write, first waiting for
+     * the connection's unwritten bytes to fall below the limit.
+     */
+    private void send(byte type, Object... fields) throws RemoteException {
+        ByteBuffer frame;
+        try {
+            frame = NioFrames.encode(type, fields);
+        } catch (IOException e) {
+            throw new RemoteException("Unable to encode message", e);
+        }
+
+        fLock.lock();
+        try {
+            while (fPendingBytes > fMaxPendingBytes && !fClosed) {
+                fDrained.await();
+            }
+            if (fClosed) {
+                throw new RemoteException("Connection to " + fName
+                        + " is closed");
+            }
+            fOutbound.add(frame);
+            fPendingBytes += frame.remaining();
+            fKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted sending to " + fName);
+        } finally {
+            fLock.unlock();
+        }
+        fKey.selector().wakeup();
+    }
+}
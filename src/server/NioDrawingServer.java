@@ -0,0 +1,193 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+
+import service_interface.DrawingRoomDirectory;
+import service_interface.DrawingServer;
+import service_interface.NioFrames;
+import service_interface.PeerExecutor;
+
+/**
+ * Serves drawing clients over the NIO transport instead of RMI. A single
+ * selector thread accepts connections and does all of their reading and
+ * writing without blocking. Each connection appears to the server's rooms as
+ * a DrawingClient, so clients on either transport share the same rooms.
+ * 
+ * Messages read from clients are carried out on inbound threads rather than
+ * on the selector thread: a broadcast may wait a little for a client's queue
+ * under the Block overflow policy, and the selector must keep writing to
+ * clients meanwhile. Each connection's messages run one at a time, in the order they
+ * arrived, on a PeerExecutor of its own, so a connection whose message waits,
+ * e.g. on a room still following its leader, holds up no other connection.
+ * 
+ * @author Andrew
+ * 
+ */
+public class NioDrawingServer implements Runnable {
+
+    private DrawingRoomDirectoryImpl fRooms;
+    private ServerSocketChannel fChannel;
+    private Selector fSelector;
+    private ExecutorService fInbound;
+    private int fMaxFrameSize;
+    private int fMaxPendingBytes;
+    private volatile boolean fClosed;
+
+    /**
+     * Creates a transport listening on the given port. Call run(), typically
+     * on a thread of its own, to start serving clients.
+     * 
+     * @throws IOException
+     *             if the port cannot be bound.
+     */
+    public NioDrawingServer(DrawingRoomDirectoryImpl rooms, int port,
+            ServerConfiguration configuration) throws IOException {
+        fRooms = rooms;
+        fMaxFrameSize = configuration.nioMaxFrameSize();
+        fMaxPendingBytes = configuration.nioMaxPendingBytes();
+        fInbound = configuration.dispatchExecutor().newExecutor();
+
+        fSelector = Selector.open();
+        fChannel = ServerSocketChannel.open();
+        fChannel.configureBlocking(false);
+        fChannel.bind(new InetSocketAddress(port));
+        fChannel.register(fSelector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the port the transport is listening on.
+     */
+    public int port() {
+        return fChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!fClosed) {
+                fSelector.select();
+
+                Iterator<SelectionKey> keys = fSelector.selectedKeys()
+                        .iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            ready(key);
+                        }
+                    } catch (CancelledKeyException e) {
+                        // The connection was closed by another thread.
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            for (SelectionKey key : fSelector.keys()) {
+                if (key.attachment() instanceof NioClientConnection) {
+                    disconnect((NioClientConnection) key.attachment());
+                }
+            }
+            fSelector.close();
+            fChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        fInbound.shutdown();
+    }
+
+    /**
+     * Stops accepting and serving clients. The selector thread closes the
+     * connections as it finishes.
+     */
+    public void close() {
+        fClosed = true;
+        fSelector.wakeup();
+    }
+
+    /**
+     * Returns the server for a room; the default room if room is null.
+     */
+    DrawingServer joinRoom(String room) throws RemoteException {
+        if (room == null) {
+            room = DrawingRoomDirectory.DEFAULT_ROOM;
+        }
+        return fRooms.joinRoom(room);
+    }
+
+    /**
+     * Queues a frame read from a connection to be carried out after the
+     * connection's earlier frames.
+     */
+    void received(final NioClientConnection connection,
+            final NioFrames.Frame frame) {
+        connection.inbound().execute(new Runnable() {
+            public void run() {
+                try {
+                    connection.handle(frame);
+                } catch (Exception e) {
+                    // Includes a room name that is rejected.
+                    System.err.println("Closing connection: " + e);
+                    disconnect(connection);
+                }
+            }
+        });
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = fChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        SelectionKey key = channel.register(fSelector, SelectionKey.OP_READ);
+        key.attach(new NioClientConnection(this, channel, key,
+                new PeerExecutor(fInbound, 1), fMaxFrameSize, fMaxPendingBytes));
+    }
+
+    private void ready(SelectionKey key) {
+        NioClientConnection connection = (NioClientConnection) key
+                .attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.write();
+            }
+        } catch (IOException e) {
+            disconnect(connection);
+        }
+    }
+
+    /**
+     * Closes a connection, then deregisters its client after the connection's
+     * pending frames, so that the selector never waits on a room's monitor.
+     */
+    private void disconnect(final NioClientConnection connection) {
+        connection.close();
+        if (!fInbound.isShutdown()) {
+            connection.inbound().execute(new Runnable() {
+                public void run() {
+                    connection.deregister();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package server;
+
+/**
+ * Counts events per second over a sliding window of whole seconds.
+ * 
+ * @author Andrew
+ * 
+ */
+public class RateMeter {
+
+    private long[] fCounts;
+    private long[] fSeconds;
+    private long fTotal;
+
+    /**
+     * Creates a meter.
+     * 
+     * @param windowSeconds
+     *            The number of whole seconds, before the current one, over
+     *            which the rate is averaged.
+     */
+    public RateMeter(int windowSeconds) {
+        fCounts = new long[Math.max(1, windowSeconds) + 1];
+        fSeconds = new long[fCounts.length];
+    }
+
+    /**
+     * Records one event.
+     */
+    synchronized public void mark() {
+        long second = System.currentTimeMillis() / 1000;
+        int slot = (int) (second % fCounts.length);
+        if (fSeconds[slot] != second) {
+            fSeconds[slot] = second;
+            fCounts[slot] = 0;
+        }
+        fCounts[slot]++;
+        fTotal++;
+    }
+
+    /**
+     * Returns the total number of events recorded.
+     */
+    synchronized public long total() {
+        return fTotal;
+    }
+
+    /**
+     * Returns the mean number of events per second over the window, not
+     * counting the second in progress.
+     */
+    synchronized public double perSecond() {
+        long now = System.currentTimeMillis() / 1000;
+        int window = fCounts.length - 1;
+        long events = 0;
+        for (int i = 0; i < fCounts.length; i++) {
+            if (fSeconds[i] < now && fSeconds[i] >= now - window) {
+                events += fCounts[i];
+            }
+        }
+        return (double) events / window;
+    }
+}
@@ -0,0 +1,331 @@
+package server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import service_interface.DrawingRoomDirectory;
+import service_interface.ExecutorMode;
+import service_interface.NioFrames;
+
+/**
+ * Tunable settings for a drawing server. Settings are read from an optional
+ * properties file; any setting that is absent or malformed falls back to its
+ * default value.
+ * 
+ * @author Andrew
+ * 
+ */
+public class ServerConfiguration {
+
+    /**
+     * Policy applied when a client's outbound queue is full. Block makes the
+     * broadcasting thread wait a little for space, DropOldest discards the
+     * oldest preview still waiting to be sent, and Disconnect deregisters
+     * the client. Under Block or DropOldest, a command that finds no room is
+     * not queued, and the client is sent it from the log instead, together
+     * with anything else it missed.
+     */
+    public enum OverflowPolicy {
+        Block, DropOldest, Disconnect
+    };
+
+    public static final String CLIENT_QUEUE_CAPACITY = "client_queue_capacity";
+    public static final String CLIENT_QUEUE_OVERFLOW_POLICY = "client_queue_overflow_policy";
+    public static final String CLIENT_BATCH_SIZE = "client_batch_size";
+    public static final String CLIENT_BATCH_LINGER_MILLIS = "client_batch_linger_millis";
+    public static final String COMPRESS_SNAPSHOTS = "compress_snapshots";
+    public static final String CHECKPOINT_THRESHOLD = "checkpoint_threshold";
+    public static final String CHECKPOINT_TAIL = "checkpoint_tail";
+    public static final String CHECKPOINT_WIDTH = "checkpoint_width";
+    public static final String CHECKPOINT_HEIGHT = "checkpoint_height";
+    public static final String JOURNAL_DIRECTORY = "journal_directory";
+    public static final String JOURNAL_SEGMENT_SIZE = "journal_segment_size";
+    public static final String JOURNAL_SYNC_INTERVAL_MILLIS = "journal_sync_interval_millis";
+    public static final String MAX_ROOMS = "max_rooms";
+    public static final String CLUSTER_LEADER = "cluster_leader";
+    public static final String NIO_PORT = "nio_port";
+    public static final String NIO_MAX_FRAME_SIZE = "nio_max_frame_size";
+    public static final String NIO_MAX_PENDING_BYTES = "nio_max_pending_bytes";
+    public static final String DISPATCH_EXECUTOR = "dispatch_executor";
+
+    // Subdirectory of the journal directory holding the journals of rooms
+    // other than the default room.
+    private static final String ROOMS_DIRECTORY = "rooms";
+
+    private Properties fProperties;
+
+    /**
+     * Creates a configuration that uses the default value for every setting.
+     */
+    public ServerConfiguration() {
+        this(new Properties());
+    }
+
+    /**
+     * Creates a configuration backed by the specified properties.
+     */
+    public ServerConfiguration(Properties properties) {
+        fProperties = properties;
+    }
+
+    /**
+     * Reads a configuration from a properties file. If the file cannot be
+     * read, a configuration with default values is returned.
+     * 
+     * @param filename
+     *            the name of the properties file, may be null.
+     */
+    public static ServerConfiguration load(String filename) {
+        Properties props = new Properties();
+
+        if (filename != null) {
+            File file = new File(filename);
+            try {
+                InputStream in = new FileInputStream(file);
+                props.load(in);
+                in.close();
+            } catch (IOException e) {
+                System.err.println("File " + file.getName()
+                        + " not found, using default server settings.");
+            }
+        }
+        return new ServerConfiguration(props);
+    }
+
+    /**
+     * Returns the maximum number of commands that may wait to be sent to a
+     * single client.
+     */
+    public int clientQueueCapacity() {
+        return Math.max(1, getInt(CLIENT_QUEUE_CAPACITY, 1024));
+    }
+
+    /**
+     * Returns the policy to apply when a client's outbound queue is full.
+     */
+    public OverflowPolicy clientQueueOverflowPolicy() {
+        String value = fProperties.getProperty(CLIENT_QUEUE_OVERFLOW_POLICY);
+        if (value != null) {
+            for (OverflowPolicy policy : OverflowPolicy.values()) {
+                if (policy.name().equalsIgnoreCase(value.trim())) {
+                    return policy;
+                }
+            }
+            System.err.println("Unknown overflow policy " + value + ".");
+        }
+        return OverflowPolicy.DropOldest;
+    }
+
+    /**
+     * Returns the maximum number of commands sent to a client in one remote
+     * call.
+     */
+    public int clientBatchSize() {
+        return Math.max(1, getInt(CLIENT_BATCH_SIZE, 64));
+    }
+
+    /**
+     * Returns how long, in milliseconds, a dispatcher waits for more commands
+     * to arrive before sending a batch that is not yet full.
+     */
+    public long clientBatchLingerMillis() {
+        return Math.max(0, getInt(CLIENT_BATCH_LINGER_MILLIS, 5));
+    }
+
+    /**
+     * Returns true if the snapshot sent to a newly registered client should
+     * be compressed.
+     */
+    public boolean compressSnapshots() {
+        return getBoolean(COMPRESS_SNAPSHOTS, true);
+    }
+
+    /**
+     * Returns the number of commands the log may hold before its oldest
+     * commands are folded into a raster checkpoint. Zero, the default,
+     * disables checkpointing.
+     */
+    public int checkpointThreshold() {
+        return Math.max(0, getInt(CHECKPOINT_THRESHOLD, 0));
+    }
+
+    /**
+     * Returns the number of most recent commands kept in the log, as commands,
+     * when a checkpoint is made.
+     */
+    public int checkpointTail() {
+        return Math.max(0, getInt(CHECKPOINT_TAIL, 1000));
+    }
+
+    /**
+     * Returns the width in pixels of the checkpoint image. Only the commands
+     * before the first drawn outside the image are folded into it; that
+     * command and those after it stay in the log.
+     */
+    public int checkpointWidth() {
+        return Math.max(1, getInt(CHECKPOINT_WIDTH, 2048));
+    }
+
+    /**
+     * Returns the height in pixels of the checkpoint image.
+     */
+    public int checkpointHeight() {
+        return Math.max(1, getInt(CHECKPOINT_HEIGHT, 2048));
+    }
+
+    /**
+     * Returns the directory in which the server journals accepted commands,
+     * or null if journalling is off.
+     */
+    public File journalDirectory() {
+        String value = fProperties.getProperty(JOURNAL_DIRECTORY);
+        if (value == null || value.trim().length() == 0) {
+            return null;
+        }
+        return new File(value.trim());
+    }
+
+    /**
+     * Returns the size in bytes of each journal segment file.
+     */
+    public int journalSegmentSize() {
+        return Math.max(4096, getInt(JOURNAL_SEGMENT_SIZE, 64 * 1024 * 1024));
+    }
+
+    /**
+     * Returns how often, in milliseconds, journalled commands are forced to
+     * disk. Commands accepted within this interval of a crash may be lost.
+     */
+    public long journalSyncIntervalMillis() {
+        return Math.max(1, getInt(JOURNAL_SYNC_INTERVAL_MILLIS, 50));
+    }
+
+    /**
+     * Returns the maximum number of rooms a server process will host,
+     * including the default room.
+     */
+    public int maxRooms() {
+        return Math.max(1, getInt(MAX_ROOMS, 64));
+    }
+
+    /**
+     * Returns the RMI registry host of the node this server follows in a
+     * cluster, or null if this server is a leader or stands alone. The
+     * leader is given as host:port, the port defaulting to 1099.
+     */
+    public String clusterLeaderHost() {
+        String value = fProperties.getProperty(CLUSTER_LEADER);
+        if (value == null || value.trim().length() == 0) {
+            return null;
+        }
+        value = value.trim();
+        int colon = value.lastIndexOf(':');
+        return colon < 0 ? value : value.substring(0, colon);
+    }
+
+    /**
+     * Returns the RMI registry port of the node this server follows.
+     */
+    public int clusterLeaderPort() {
+        String value = fProperties.getProperty(CLUSTER_LEADER);
+        if (value != null) {
+            value = value.trim();
+            int colon = value.lastIndexOf(':');
+            if (colon >= 0) {
+                try {
+                    return Integer.parseInt(value.substring(colon + 1));
+                } catch (NumberFormatException e) {
+                    System.err.println("Property " + CLUSTER_LEADER
+                            + " does not end with a port number.");
+                }
+            }
+        }
+        return 1099;
+    }
+
+    /**
+     * Returns the port on which clients are served over the NIO transport, as
+     * well as over RMI. Zero disables the NIO transport.
+     */
+    public int nioPort() {
+        return Math.max(0, getInt(NIO_PORT, 0));
+    }
+
+    /**
+     * Returns the largest frame, in bytes, accepted from an NIO client.
+     */
+    public int nioMaxFrameSize() {
+        return Math.max(1024, getInt(NIO_MAX_FRAME_SIZE,
+                NioFrames.DEFAULT_MAX_FRAME_SIZE));
+    }
+
+    /**
+     * Returns how many bytes may wait to be written to one NIO client before
+     * its dispatcher waits for them to drain.
+     */
+    public int nioMaxPendingBytes() {
+        return Math.max(1024, getInt(NIO_MAX_PENDING_BYTES, 1024 * 1024));
+    }
+
+    /**
+     * Returns the kind of threads on which commands are dispatched to
+     * clients and forwarded to a cluster leader.
+     */
+    public ExecutorMode dispatchExecutor() {
+        return ExecutorMode.parse(fProperties.getProperty(DISPATCH_EXECUTOR));
+    }
+
+    /**
+     * Returns the configuration for a named room. Rooms share every setting
+     * except the journal directory: the default room journals to the
+     * configured directory, as a server without rooms did, and every other
+     * room to a subdirectory of its own.
+     * 
+     * @param room
+     *            the room name, which must be usable as a file name.
+     */
+    public ServerConfiguration forRoom(String room) {
+        File journalDirectory = journalDirectory();
+        if (journalDirectory == null
+                || room.equals(DrawingRoomDirectory.DEFAULT_ROOM)) {
+            return this;
+        }
+
+        Properties props = new Properties();
+        props.putAll(fProperties);
+        props.setProperty(JOURNAL_DIRECTORY, new File(new File(
+                journalDirectory, ROOMS_DIRECTORY), room).getPath());
+        return new ServerConfiguration(props);
+    }
+
+    /**
+     * Returns the integer value of a setting, or a default value if the
+     * setting is absent or is not a number.
+     */
+    protected int getInt(String key, int defaultValue) {
+        String value = fProperties.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Property " + key + " is not a number.");
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns the boolean value of a setting, or a default value if the
+     * setting is absent.
+     */
+    protected boolean getBoolean(String key, boolean defaultValue) {
+        String value = fProperties.getProperty(key);
+        if (value != null) {
+            return Boolean.parseBoolean(value.trim());
+        }
+        return defaultValue;
+    }
+}
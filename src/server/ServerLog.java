@@ -0,0 +1,58 @@
+package server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Log for messages written while holding a server's monitor. Writing to the
+ * console can block, so messages are only queued, and a daemon thread
+ * prints them. If the queue is full the message is dropped and counted
+ * rather than waited for.
+ * 
+ * @author Andrew
+ * 
+ */
+public class ServerLog {
+
+    private static final int CAPACITY = 8192;
+
+    private static final BlockingQueue<String> QUEUE = new ArrayBlockingQueue<String>(
+            CAPACITY);
+    private static final AtomicLong DROPPED = new AtomicLong();
+
+    static {
+        Thread writer = new Thread("server-log") {
+            public void run() {
+                try {
+                    while (true) {
+                        System.out.println(QUEUE.take());
+                    }
+                } catch (InterruptedException e) {
+                    // Nothing more will be logged.
+                }
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private ServerLog() {
+    }
+
+    /**
+     * Queues a message to be printed. Never blocks.
+     */
+    public static void println(String message) {
+        if (!QUEUE.offer(message)) {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of messages dropped because the queue was full.
+     */
+    public static long dropped() {
+        return DROPPED.get();
+    }
+}
@@ -0,0 +1,33 @@
+package service_interface;
+
+import java.awt.Rectangle;
+
+/**
+ * Optional interface for DrawingCommand implementations that know the area
+ * they draw on. A drawing client uses the bounds of finished commands to
+ * redraw only the commands that touch a damaged part of the canvas, and the
+ * bounds of the change made by each step of a command in progress to repaint
+ * only that part of the canvas. Commands that do not implement this interface
+ * are assumed to draw anywhere, and are always redrawn.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface BoundedDrawingCommand extends DrawingCommand {
+    /**
+     * Returns the smallest rectangle enclosing every pixel the command draws
+     * when drawn with a one pixel pen. Implementations should compute the
+     * bounds of a finished command once and cache them. Callers may modify
+     * the rectangle returned.
+     */
+    public Rectangle bounds();
+
+    /**
+     * Returns the smallest rectangle enclosing every pixel whose colour
+     * differs between drawing the command now and drawing it when it last
+     * notified its listeners of progress: for example the newest segment of a
+     * freehand stroke, or both the old and new positions of a straight line
+     * being dragged. Callers may modify the rectangle returned.
+     */
+    public Rectangle changedBounds();
+}
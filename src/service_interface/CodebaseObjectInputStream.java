@@ -0,0 +1,33 @@
+package service_interface;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.rmi.server.RMIClassLoader;
+
+/**
+ * Object stream that reads objects written by a CodebaseObjectOutputStream.
+ * Classes that cannot be loaded locally are loaded from the codebase recorded
+ * alongside them.
+ * 
+ * @author Andrew
+ * 
+ */
+public class CodebaseObjectInputStream extends ObjectInputStream {
+
+    public CodebaseObjectInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc)
+            throws IOException, ClassNotFoundException {
+        String codebase = (String) readObject();
+        try {
+            return super.resolveClass(desc);
+        } catch (ClassNotFoundException e) {
+            return RMIClassLoader.loadClass(codebase, desc.getName());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package service_interface;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.rmi.server.RMIClassLoader;
+
+/**
+ * Object stream that records the codebase of each class it writes, in the
+ * same way that RMI does when marshalling arguments. Objects written to it
+ * can be read back by a CodebaseObjectInputStream in a process that does not
+ * have their classes locally, e.g. a drawing server reading DrawingCommand
+ * implementations supplied by clients.
+ * 
+ * @author Andrew
+ * 
+ */
+public class CodebaseObjectOutputStream extends ObjectOutputStream {
+
+    public CodebaseObjectOutputStream(OutputStream out) throws IOException {
+        super(out);
+    }
+
+    @Override
+    protected void annotateClass(Class<?> cl) throws IOException {
+        writeObject(RMIClassLoader.getClassAnnotation(cl));
+    }
+}
@@ -0,0 +1,23 @@
+package service_interface;
+
+import java.util.Properties;
+
+/**
+ * Optional interface for DrawingCommand implementations that have settings. A
+ * drawing application passes the properties it was started with to each
+ * ConfigurableDrawingCommand it loads, before the command is first executed.
+ * Implementations should ignore properties they do not recognise and use a
+ * sensible default for any setting that is absent.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface ConfigurableDrawingCommand extends DrawingCommand {
+    /**
+     * Applies the settings that are relevant to this command.
+     * 
+     * @param properties
+     *            the drawing application's properties.
+     */
+    public void configure(Properties properties);
+}
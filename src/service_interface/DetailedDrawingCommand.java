@@ -0,0 +1,31 @@
+package service_interface;
+
+import java.awt.Graphics;
+
+/**
+ * Optional interface for DrawingCommand implementations that can leave out
+ * detail too small to see when the canvas is shown scaled down. A drawing
+ * client that shows a zoomed out view of the canvas draws such commands with
+ * the scale of the view, so that the cost of drawing a command depends on
+ * the size it appears on screen rather than on how much detail it holds.
+ * Other commands are drawn in full detail at every scale.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface DetailedDrawingCommand extends DrawingCommand {
+    /**
+     * Draws the command, as draw() does, scaled down by a factor: a point
+     * (x, y) of the canvas is drawn at (x * scale, y * scale) on graphics
+     * that are not themselves scaled. Lines are drawn a pixel wide, and
+     * detail that would be less than half a pixel across on screen may be
+     * left out.
+     * 
+     * @param g
+     *            the graphics to draw on.
+     * @param scale
+     *            the number of screen pixels to a pixel of the canvas, less
+     *            than one.
+     */
+    public void draw(Graphics g, double scale);
+}
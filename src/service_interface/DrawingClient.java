@@ -1,33 +1,92 @@
-package service_interface;
-
-import java.rmi.Remote;
-import java.rmi.RemoteException;
-
-/**
- * Remote interface to facilitate the receival of finished drawing commands from
- * a drawing server.
- * 
- * @author Andrew
- * 
- */
-public interface DrawingClient extends Remote {
-    /**
-     * Return a unique name for the drawing client.
-     * 
-     * @return A name uniquely identifying the drawing client.
-     * @throws RemoteException
-     */
-    String getName() throws RemoteException;
-
-    /**
-     * When a drawing command is executed on another client the server
-     * broadcasts it to each other client by calling this method.
-     * 
-     * @param cmd
-     *            The finished drawing command which was executed on another
-     *            client.
-     * @throws RemoteException
-     */
-    void receiveDrawingCommandFromServer(DrawingCommand cmd)
-            throws RemoteException;
-}
+package service_interface;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Remote interface to facilitate the receival of finished drawing commands from
+ * a drawing server.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface DrawingClient extends Remote {
+    /**
+     * Return a unique name for the drawing client.
+     * 
+     * @return A name uniquely identifying the drawing client.
+     * @throws RemoteException
+     */
+    String getName() throws RemoteException;
+
+    /**
+     * When a drawing command is executed on another client the server
+     * broadcasts it to each other client by calling this method.
+     * 
+     * @param cmd
+     *            The finished drawing command which was executed on another
+     *            client.
+     * @throws RemoteException
+     */
+    void receiveDrawingCommandFromServer(DrawingCommand cmd)
+            throws RemoteException;
+
+    /**
+     * Receives a batch of drawing commands executed on other clients. The
+     * server uses this method to deliver every command that has built up for
+     * the client in a single remote call. Clients that do not support it are
+     * sent each command through receiveDrawingCommandFromServer instead.
+     * 
+     * @param cmds
+     *            The finished drawing commands, in the order they should be
+     *            applied.
+     * @throws RemoteException
+     */
+    void receiveDrawingCommandsFromServer(List<DrawingCommand> cmds)
+            throws RemoteException;
+
+    /**
+     * Receives a batch of drawing commands executed on other clients, as
+     * above, together with the sequence number the server gave the last of
+     * the commands it has sent the client, so the client can resume from it
+     * if its connection is lost. Commands the client sent itself are not
+     * sent back, but are counted. Clients that do not support this method are
+     * sent the commands through receiveDrawingCommandsFromServer instead.
+     * 
+     * @param sequence
+     *            The sequence number of the last command accepted by the
+     *            server that is included in, or left out of, the batch.
+     * @param cmds
+     *            The finished drawing commands, in the order they should be
+     *            applied.
+     * @throws RemoteException
+     */
+    void receiveSequencedCommandsFromServer(long sequence,
+            List<DrawingCommand> cmds) throws RemoteException;
+
+    /**
+     * Receives the shared drawing state when the client registers with the
+     * server. The snapshot holds every drawing command that finished before
+     * the client registered; commands broadcast afterwards are delivered
+     * separately.
+     * 
+     * @param snapshot
+     *            The drawing commands executed so far.
+     * @throws RemoteException
+     */
+    void receiveSnapshotFromServer(DrawingSnapshot snapshot)
+            throws RemoteException;
+
+    /**
+     * Receives previews of drawing commands that are still executing on
+     * other clients. Previews received from the same sender are to be applied
+     * in order.
+     * 
+     * @param previews
+     *            The previews, at most one per sender.
+     * @throws RemoteException
+     */
+    void receivePreviewsFromServer(List<DrawingPreview> previews)
+            throws RemoteException;
+}
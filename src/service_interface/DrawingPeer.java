@@ -0,0 +1,30 @@
+package service_interface;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * A drawing server node that follows another node, its leader, as part of a
+ * cluster serving the same shared drawing. A follower registers with its
+ * leader as a drawing client, so it receives the leader's history and then
+ * every command in the order the leader accepted it. Unlike an ordinary
+ * client it is also told who sent each command, so that it can pass the
+ * commands on to its own clients without echoing any back to their sender.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface DrawingPeer extends DrawingClient {
+    /**
+     * Receives finished drawing commands, in the order the leader accepted
+     * them, together with the name of the client that sent each command.
+     * 
+     * @param senders
+     *            The senders; senders.get(i) sent cmds.get(i).
+     * @param cmds
+     *            The commands.
+     * @throws RemoteException
+     */
+    public void receiveRelayedCommandsFromServer(List<String> senders,
+            List<DrawingCommand> cmds) throws RemoteException;
+}
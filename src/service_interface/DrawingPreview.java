@@ -0,0 +1,105 @@
+package service_interface;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A preview of a drawing command that is still executing on another client.
+ * Previews are ephemeral: the server does not keep them, and may drop them
+ * for a client that is falling behind. Once the command completes, the
+ * finished command is delivered as usual and is followed by a preview that
+ * ends the stroke, which the receiving client uses to discard its preview.
+ * 
+ * A preview holds fragments, finished drawing commands that together draw the
+ * progress so far. A preview either replaces the fragments previously received
+ * for the same sender or extends them.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingPreview implements Serializable {
+
+    private String fSender;
+    private List<DrawingCommand> fFragments;
+    private boolean fExtends;
+    private boolean fEnded;
+
+    private DrawingPreview(String sender, List<DrawingCommand> fragments,
+            boolean extendsPrevious, boolean ended) {
+        fSender = sender;
+        fFragments = fragments;
+        fExtends = extendsPrevious;
+        fEnded = ended;
+    }
+
+    /**
+     * Creates a preview of the progress of an executing command.
+     * 
+     * @param sender
+     *            The name of the client executing the command.
+     * @param fragment
+     *            A finished command that draws the progress.
+     * @param extendsPrevious
+     *            true if the fragment is to be drawn in addition to those
+     *            previously received from the sender, false if it replaces
+     *            them.
+     */
+    public static DrawingPreview progress(String sender,
+            DrawingCommand fragment, boolean extendsPrevious) {
+        List<DrawingCommand> fragments = new ArrayList<DrawingCommand>(1);
+        fragments.add(fragment);
+        return new DrawingPreview(sender, fragments, extendsPrevious, false);
+    }
+
+    /**
+     * Creates a preview that ends the sender's current preview.
+     */
+    public static DrawingPreview ended(String sender) {
+        return new DrawingPreview(sender, new ArrayList<DrawingCommand>(0),
+                false, true);
+    }
+
+    /**
+     * Returns a single preview with the same effect as receiving this preview
+     * and then a later one from the same sender.
+     */
+    public DrawingPreview coalesce(DrawingPreview later) {
+        if (later.fEnded || !later.fExtends || fEnded) {
+            return later;
+        }
+        List<DrawingCommand> fragments = new ArrayList<DrawingCommand>(
+                fFragments);
+        fragments.addAll(later.fFragments);
+        return new DrawingPreview(fSender, fragments, fExtends, false);
+    }
+
+    /**
+     * Returns the name of the client executing the command.
+     */
+    public String sender() {
+        return fSender;
+    }
+
+    /**
+     * Returns the fragments that draw the progress, in order.
+     */
+    public List<DrawingCommand> fragments() {
+        return fFragments;
+    }
+
+    /**
+     * Returns true if the fragments extend those previously received from
+     * the sender, false if they replace them.
+     */
+    public boolean extendsPrevious() {
+        return fExtends;
+    }
+
+    /**
+     * Returns true if this preview ends the sender's preview.
+     */
+    public boolean isEnded() {
+        return fEnded;
+    }
+}
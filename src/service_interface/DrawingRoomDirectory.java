@@ -0,0 +1,42 @@
+package service_interface;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * Remote directory of the named rooms hosted by a drawing server process. Each
+ * room is a separate shared drawing, with its own DrawingServer, command log
+ * and registered clients; a drawing client joins a room by asking the
+ * directory for the room's DrawingServer and registering with that.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface DrawingRoomDirectory extends Remote {
+    /**
+     * Name of the room that is also bound in the registry as drawingserver,
+     * for clients that do not name a room.
+     */
+    public static final String DEFAULT_ROOM = "default";
+
+    /**
+     * Returns the server for a named room, creating the room if it does not
+     * yet exist.
+     * 
+     * @param room
+     *            The room name: letters, digits, '-' and '_' only.
+     * @throws IllegalArgumentException
+     *             if the name is not a valid room name.
+     * @throws RemoteException
+     *             if the room cannot be created.
+     */
+    public DrawingServer joinRoom(String room) throws RemoteException;
+
+    /**
+     * Returns the names of the rooms that currently exist.
+     * 
+     * @throws RemoteException
+     */
+    public List<String> roomNames() throws RemoteException;
+}
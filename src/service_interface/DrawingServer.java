@@ -1,48 +1,115 @@
-package service_interface;
-
-import java.rmi.Remote;
-import java.rmi.RemoteException;
-import java.util.ArrayList;
-
-/**
- * Remote server to facilitate the broadcast of finished drawing commands
- * amongst a group of remote drawing applications.
- * 
- * @author Andrew
- * 
- */
-public interface DrawingServer extends Remote {
-    /**
-     * Whenever a drawing client starts up it will attempt to register with the
-     * server by calling this method. The drawing space of the client will be
-     * synchronized with the current shared state of existing clients.
-     * 
-     * @param client
-     *            The client which wishes to register with the server.
-     * @throws RemoteException
-     */
-    public void addDrawingClient(DrawingClient client) throws RemoteException;
-
-    /**
-     * Removes a drawing client.
-     * 
-     * @param client
-     * @throws RemoteException
-     */
-    public void removeDrawingClient(DrawingClient client)
-            throws RemoteException;
-
-    /**
-     * Once a client has finished executing a drawing command, it will call this
-     * method in order to broadcast the drawing command to the rest of the
-     * registered drawing clients.
-     * 
-     * @param sender
-     *            The origin of the drawing command.
-     * @param cmd
-     *            The finished drawing command to be broadcast.
-     * @throws RemoteException
-     */
-    public void broadcastDrawingCommand(String sender, DrawingCommand cmd)
-            throws RemoteException;
-}
+package service_interface;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+
+/**
+ * Remote server to facilitate the broadcast of finished drawing commands
+ * amongst a group of remote drawing applications.
+ * 
+ * The server numbers the commands it accepts 1, 2, 3 and so on, in the order
+ * it accepts them. A client that keeps track of the number of the last
+ * command it has received can fetch, or resume its registration with, only
+ * the commands it has missed.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface DrawingServer extends Remote {
+    /**
+     * Whenever a drawing client starts up it will attempt to register with the
+     * server by calling this method. The drawing space of the client will be
+     * synchronized with the current shared state of existing clients.
+     * 
+     * @param client
+     *            The client which wishes to register with the server.
+     * @throws RemoteException
+     */
+    public void addDrawingClient(DrawingClient client) throws RemoteException;
+
+    /**
+     * Registers a drawing client again, after its connection to the server
+     * was lost, replacing its previous registration. Rather than every
+     * command executed so far, the client is first sent a snapshot of the
+     * commands it has missed, then every command broadcast afterwards.
+     * 
+     * @param client
+     *            The client which wishes to register with the server.
+     * @param sequence
+     *            The sequence number of the last command the client
+     *            received.
+     * @throws RemoteException
+     */
+    public void resumeDrawingClient(DrawingClient client, long sequence)
+            throws RemoteException;
+
+    /**
+     * Removes a drawing client.
+     * 
+     * @param client
+     * @throws RemoteException
+     */
+    public void removeDrawingClient(DrawingClient client)
+            throws RemoteException;
+
+    /**
+     * Once a client has finished executing a drawing command, it will call this
+     * method in order to broadcast the drawing command to the rest of the
+     * registered drawing clients.
+     * 
+     * @param sender
+     *            The origin of the drawing command.
+     * @param cmd
+     *            The finished drawing command to be broadcast.
+     * @throws RemoteException
+     */
+    public void broadcastDrawingCommand(String sender, DrawingCommand cmd)
+            throws RemoteException;
+
+    /**
+     * Broadcasts a finished drawing command, as above, identified by a number
+     * chosen by its sender. The numbers a sender gives its commands must
+     * increase. A command with a number no greater than that of a command
+     * already accepted from the same sender is ignored, so a sender that is
+     * not sure whether a call reached the server can safely make it again.
+     * 
+     * @param sender
+     *            The origin of the drawing command.
+     * @param commandId
+     *            The sender's number for the command.
+     * @param cmd
+     *            The finished drawing command to be broadcast.
+     * @throws RemoteException
+     */
+    public void broadcastDrawingCommand(String sender, long commandId,
+            DrawingCommand cmd) throws RemoteException;
+
+    /**
+     * While a client is executing a drawing command, it may call this method
+     * to preview the command's progress to the rest of the registered drawing
+     * clients. Previews are not stored, and completing the command ends the
+     * preview.
+     * 
+     * @param sender
+     *            The origin of the preview.
+     * @param preview
+     *            The progress of the command.
+     * @throws RemoteException
+     */
+    public void broadcastDrawingPreview(String sender, DrawingPreview preview)
+            throws RemoteException;
+
+    /**
+     * Returns a snapshot of the commands accepted after the one with a given
+     * sequence number. If some of them have since been compacted into the
+     * server's checkpoint, or the server does not know the sequence number,
+     * the snapshot holds the checkpoint image and every command after it
+     * instead.
+     * 
+     * @param sequence
+     *            The sequence number of the last command the caller has.
+     * @throws RemoteException
+     */
+    public DrawingSnapshot commandsSince(long sequence) throws RemoteException;
+}
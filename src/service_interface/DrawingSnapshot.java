@@ -0,0 +1,207 @@
+package service_interface;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The shared drawing state at a point in time, sent to a drawing client as a
+ * single message when it registers with a server. A snapshot holds the
+ * finished drawing commands in the order they were executed, optionally
+ * compressed. Where the server has compacted older commands into a raster
+ * checkpoint, the snapshot also holds the checkpoint image, which is to be
+ * drawn beneath the commands.
+ * 
+ * A snapshot may instead hold only the commands a client missed while its
+ * connection to the server was lost. Either way, it records the sequence
+ * number of its last command, so that the client can tell which of its
+ * commands it already has.
+ * 
+ * When compressed, the commands are serialised into a byte array by a
+ * CodebaseObjectOutputStream, so a client that does not have a DrawingCommand
+ * implementation class locally can still download it.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DrawingSnapshot implements Serializable {
+
+    private int fSize;
+
+    // PNG encoded checkpoint image, or null, and the number of commands
+    // folded into it.
+    private byte[] fCheckpointImage;
+    private long fCheckpointCommandCount;
+
+    // Sequence number of the last command, or of the last command in the
+    // checkpoint if there are none.
+    private long fSequence;
+
+    // Exactly one of these is non-null, depending on whether the snapshot is
+    // compressed.
+    private DrawingCommand[] fCommands;
+    private byte[] fCompressedCommands;
+
+    /**
+     * Creates a snapshot of a list of finished drawing commands.
+     * 
+     * @param cmds
+     *            The commands, in the order they were executed.
+     * @param compress
+     *            Whether to compress the commands.
+     * @throws IOException
+     *             if a command cannot be serialised.
+     */
+    public DrawingSnapshot(List<DrawingCommand> cmds, boolean compress)
+            throws IOException {
+        this(null, 0, cmds, compress);
+    }
+
+    /**
+     * Creates a snapshot of a checkpoint image and the list of finished
+     * drawing commands executed since the checkpoint.
+     * 
+     * @param checkpointImage
+     *            The PNG encoded checkpoint image, or null if there is none.
+     * @param checkpointCommandCount
+     *            The number of commands folded into the checkpoint image.
+     * @param cmds
+     *            The commands, in the order they were executed.
+     * @param compress
+     *            Whether to compress the commands.
+     * @throws IOException
+     *             if a command cannot be serialised.
+     */
+    public DrawingSnapshot(byte[] checkpointImage,
+            long checkpointCommandCount, List<DrawingCommand> cmds,
+            boolean compress) throws IOException {
+        this(checkpointImage, checkpointCommandCount, checkpointCommandCount
+                + cmds.size(), cmds, compress);
+    }
+
+    /**
+     * Creates a snapshot of a checkpoint image, if any, and a list of
+     * finished drawing commands ending with the command with a given sequence
+     * number.
+     * 
+     * @param checkpointImage
+     *            The PNG encoded checkpoint image, or null if there is none.
+     * @param checkpointCommandCount
+     *            The number of commands folded into the checkpoint image.
+     * @param sequence
+     *            The sequence number of the last command.
+     * @param cmds
+     *            The commands, in the order they were executed.
+     * @param compress
+     *            Whether to compress the commands.
+     * @throws IOException
+     *             if a command cannot be serialised.
+     */
+    public DrawingSnapshot(byte[] checkpointImage,
+            long checkpointCommandCount, long sequence,
+            List<DrawingCommand> cmds, boolean compress) throws IOException {
+        fCheckpointImage = checkpointImage;
+        fCheckpointCommandCount = checkpointCommandCount;
+        fSequence = sequence;
+        fSize = cmds.size();
+
+        if (compress) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new CodebaseObjectOutputStream(
+                    new GZIPOutputStream(bytes));
+            out.writeInt(cmds.size());
+            for (DrawingCommand cmd : cmds) {
+                out.writeObject(cmd);
+            }
+            out.close();
+            fCompressedCommands = bytes.toByteArray();
+        } else {
+            fCommands = cmds.toArray(new DrawingCommand[cmds.size()]);
+        }
+    }
+
+    /**
+     * Returns the number of drawing commands in the snapshot.
+     */
+    public int size() {
+        return fSize;
+    }
+
+    /**
+     * Returns the sequence number of the last command in the snapshot. The
+     * commands are numbered consecutively up to it.
+     */
+    public long sequence() {
+        return fSequence;
+    }
+
+    /**
+     * Returns the PNG encoded checkpoint image, or null if the snapshot does
+     * not have one.
+     */
+    public byte[] encodedCheckpointImage() {
+        return fCheckpointImage;
+    }
+
+    /**
+     * Returns the number of commands folded into the checkpoint image.
+     */
+    public long checkpointCommandCount() {
+        return fCheckpointCommandCount;
+    }
+
+    /**
+     * Returns the checkpoint image, or null if the snapshot does not have
+     * one.
+     * 
+     * @throws IOException
+     *             if the image cannot be decoded.
+     */
+    public BufferedImage checkpointImage() throws IOException {
+        if (fCheckpointImage == null) {
+            return null;
+        }
+        return ImageIO.read(new ByteArrayInputStream(fCheckpointImage));
+    }
+
+    /**
+     * Returns the drawing commands held in the snapshot, in the order they
+     * were executed.
+     * 
+     * @throws IOException
+     *             if the compressed commands cannot be read.
+     * @throws ClassNotFoundException
+     *             if a command's class cannot be loaded.
+     */
+    public List<DrawingCommand> commands() throws IOException,
+            ClassNotFoundException {
+        if (fCommands != null) {
+            return Arrays.asList(fCommands);
+        }
+
+        ObjectInputStream in = new CodebaseObjectInputStream(
+                new GZIPInputStream(new ByteArrayInputStream(
+                        fCompressedCommands)));
+        try {
+            int size = in.readInt();
+            List<DrawingCommand> cmds = new ArrayList<DrawingCommand>(size);
+            for (int i = 0; i < size; i++) {
+                cmds.add((DrawingCommand) in.readObject());
+            }
+            return cmds;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package service_interface;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The kind of threads on which drawing commands are dispatched to remote
+ * peers. Cached runs each task on a platform thread from a cached pool, which
+ * grows by one thread for every call blocked on a slow peer. Virtual runs
+ * each task on a virtual thread of its own, so blocked calls cost little more
+ * than their stacks.
+ * 
+ * The code is compiled for Java 17, which has no virtual threads, so Virtual
+ * finds them reflectively and falls back to Cached on an older runtime.
+ * 
+ * @author Andrew
+ * 
+ */
+public enum ExecutorMode {
+    Cached, Virtual;
+
+    /**
+     * Returns the mode named by a setting, ignoring case, or Cached if the
+     * value is null or names no mode.
+     */
+    public static ExecutorMode parse(String value) {
+        if (value != null) {
+            for (ExecutorMode mode : values()) {
+                if (mode.name().equalsIgnoreCase(value.trim())) {
+                    return mode;
+                }
+            }
+            System.err.println("Unknown executor mode " + value + ".");
+        }
+        return Cached;
+    }
+
+    /**
+     * Creates an executor that starts a thread of this mode for each task
+     * that finds no idle thread. Virtual threads are never reused.
+     */
+    public ExecutorService newExecutor() {
+        if (this == Virtual) {
+            try {
+                Method factory = Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch (NoSuchMethodException e) {
+                System.err.println("Virtual threads need Java 21, using "
+                        + Cached + " threads.");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+}
@@ -0,0 +1,30 @@
+package service_interface;
+
+/**
+ * Optional interface for DrawingCommand implementations whose progress can be
+ * described incrementally. While such a command executes, a drawing client
+ * previews it to other clients by sending only what has been drawn since the
+ * previous preview, rather than a copy of the whole command each time.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface IncrementalDrawingCommand extends DrawingCommand {
+    /**
+     * Returns a mark identifying how far execution has progressed, e.g. the
+     * number of points drawn so far.
+     */
+    public int progressMark();
+
+    /**
+     * Returns a finished DrawingCommand that draws the progress made since an
+     * earlier mark, joined on to what had been drawn by then. Drawing the
+     * fragments returned for successive marks, in order, has the same effect
+     * as drawing the command itself.
+     * 
+     * @param mark
+     *            a value previously returned by progressMark() during the
+     *            current execution.
+     */
+    public DrawingCommand progressSince(int mark);
+}
@@ -0,0 +1,149 @@
+package service_interface;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Framing for the NIO transport, an alternative to RMI in which each drawing
+ * client holds one long-lived socket connection to the server. Every message
+ * is a frame: a four byte length, then a one byte message type, then the
+ * message's fields written by a CodebaseObjectOutputStream. The length counts
+ * the type byte and the fields.
+ * 
+ * The messages mirror the methods of DrawingServer, sent by the client, and
+ * of DrawingClient, sent by the server. In reply to REGISTER or RESUME, the
+ * server first tells the client the largest frame it will send, which is the
+ * largest it accepts, so that the limit need only be configured on the
+ * server.
+ * 
+ * @author Andrew
+ * 
+ */
+public class NioFrames {
+
+    // Client to server: name, room (null for the default room).
+    public static final byte REGISTER = 1;
+    // Client to server: no fields.
+    public static final byte DEREGISTER = 2;
+    // Client to server: sender, command.
+    public static final byte BROADCAST_COMMAND = 3;
+    // Client to server: sender, preview.
+    public static final byte BROADCAST_PREVIEW = 4;
+    // Server to client: command.
+    public static final byte COMMAND = 5;
+    // Server to client: list of commands.
+    public static final byte COMMANDS = 6;
+    // Server to client: snapshot.
+    public static final byte SNAPSHOT = 7;
+    // Server to client: list of previews.
+    public static final byte PREVIEWS = 8;
+    // Client to server: sender, command ID, command.
+    public static final byte BROADCAST_IDENTIFIED_COMMAND = 9;
+    // Client to server: name, room (null for the default room), sequence
+    // number of the last command received.
+    public static final byte RESUME = 10;
+    // Server to client: sequence number, list of commands.
+    public static final byte SEQUENCED_COMMANDS = 11;
+    // Server to client: largest frame size, in bytes.
+    public static final byte FRAME_LIMIT = 12;
+
+    // Bytes taken by the length field.
+    public static final int LENGTH_SIZE = 4;
+
+    // Largest frame accepted unless configured, or told by the server,
+    // otherwise.
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * A frame that has been read, less its length field.
+     */
+    public static class Frame {
+        private byte[] fBytes;
+
+        public Frame(byte[] bytes) {
+            fBytes = bytes;
+        }
+
+        /**
+         * Returns the message type.
+         */
+        public byte type() {
+            return fBytes[0];
+        }
+
+        /**
+         * Returns a stream from which the message's fields can be read, in
+         * the order they were written.
+         */
+        public ObjectInputStream fields() throws IOException {
+            return new CodebaseObjectInputStream(new ByteArrayInputStream(
+                    fBytes, 1, fBytes.length - 1));
+        }
+    }
+
+    /**
+     * Encodes a message as a frame, ready to be written.
+     * 
+     * @param type
+     *            The message type.
+     * @param fields
+     *            The message's fields, each of which must be serialisable.
+     * @throws IOException
+     *             if a field cannot be serialised.
+     */
+    public static ByteBuffer encode(byte type, Object... fields)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        // Leave room for the length, filled in below.
+        for (int i = 0; i < LENGTH_SIZE; i++) {
+            bytes.write(0);
+        }
+        bytes.write(type);
+
+        ObjectOutputStream out = new CodebaseObjectOutputStream(bytes);
+        for (Object field : fields) {
+            out.writeObject(field);
+        }
+        out.close();
+
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - LENGTH_SIZE);
+        return frame;
+    }
+
+    /**
+     * Reads a frame from a blocking stream.
+     * 
+     * @param maxFrameSize
+     *            The largest frame length to accept.
+     * @throws IOException
+     *             if the stream ends or the frame length is out of range.
+     */
+    public static Frame read(DataInputStream in, int maxFrameSize)
+            throws IOException {
+        int length = in.readInt();
+        checkLength(length, maxFrameSize);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new Frame(bytes);
+    }
+
+    /**
+     * Checks that a frame length read from a connection is in range.
+     * 
+     * @throws IOException
+     *             if it is not.
+     */
+    public static void checkLength(int length, int maxFrameSize)
+            throws IOException {
+        if (length < 1 || length > maxFrameSize) {
+            throw new IOException("Frame length " + length + " out of range");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package service_interface;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the tasks that call one remote peer on a shared executor, at most a
+ * fixed number at a time. Tasks beyond the limit wait in a queue rather than
+ * taking a thread each, so a slow peer holds no more threads than its limit.
+ * With a limit of one, tasks run one after another in the order they were
+ * submitted, which is what keeps a peer's commands in order.
+ * 
+ * @author Andrew
+ * 
+ */
+public class PeerExecutor implements Executor {
+
+    private Executor fExecutor;
+    private int fLimit;
+    private Queue<Runnable> fWaiting = new ArrayDeque<Runnable>();
+    private int fRunning;
+
+    /**
+     * Creates an executor for one peer.
+     * 
+     * @param executor
+     *            The shared executor that runs the tasks.
+     * @param limit
+     *            The maximum number of the peer's tasks running at once.
+     */
+    public PeerExecutor(Executor executor, int limit) {
+        fExecutor = executor;
+        fLimit = Math.max(1, limit);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            if (fRunning >= fLimit) {
+                fWaiting.add(task);
+                return;
+            }
+            fRunning++;
+        }
+        start(task);
+    }
+
+    /**
+     * Returns the number of tasks waiting for one of the peer's running tasks
+     * to finish.
+     */
+    synchronized public int waiting() {
+        return fWaiting.size();
+    }
+
+    private void start(final Runnable task) {
+        fExecutor.execute(new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts the next waiting task in place of one that has finished.
+     */
+    private void finished() {
+        Runnable next;
+        synchronized (this) {
+            next = fWaiting.poll();
+            if (next == null) {
+                fRunning--;
+                return;
+            }
+        }
+        start(next);
+    }
+}